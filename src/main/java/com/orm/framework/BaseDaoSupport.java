@@ -4,17 +4,29 @@ import com.alibaba.fastjson.util.FieldInfo;
 import com.alibaba.fastjson.util.TypeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.core.common.Page;
+import javax.core.common.SeekPage;
 import javax.core.common.jdbc.BaseDao;
 import javax.core.common.utils.BeanUtils;
-import javax.core.common.utils.DataUtils;
 import javax.core.common.utils.GenericsUtils;
 import javax.sql.DataSource;
 import java.io.*;
@@ -24,6 +36,19 @@ import java.sql.*;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * BaseDao 扩展类，主要功能是支持自动拼装sql语句，必须继承方可使用
@@ -37,7 +62,7 @@ import java.util.regex.Pattern;
  * @param <T>
  * @param <PK>
  */
-public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializable> implements BaseDao<T, PK> {
+public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializable> implements BaseDao<T, PK>, DisposableBean {
     private Logger log = Logger.getLogger(BaseDaoSupport.class);
 
     private String tableName = "";
@@ -52,17 +77,126 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
 
     private EntityOperation<T> op;
 
+    //生成的INSERT/UPDATE/REPLACE语句缓存
+    private final StatementTextCache statementCache = new StatementTextCache(256);
+
+    //按QueryRule结构缓存的查询计划
+    private final QueryRulePlanCache queryPlanCache = new QueryRulePlanCache(512);
+
+    //insertAll/replaceAll、deleteAll多行语句的分块规划，首次使用时创建
+    private volatile ChunkPlanner writePlanner;
+    private volatile ChunkPlanner deletePlanner;
+    private volatile long maxAllowedPacket = -1;
+    private volatile Dialect dialect;
+    private volatile List<BulkIngestStrategy> ingestStrategies;
+    private volatile WriteBehindBuffer writeBehind;
+
     protected BaseDaoSupport() {
         try {
             //获取BaseDaoSupport<T extends Serializable, PK extends Serializable>中T的实际类型
             Class<T> entityClass = GenericsUtils.getSuperClassGenricType(getClass(), 0);
-            op = new EntityOperation<T>(entityClass, this.getPKColumn());
+            op = new EntityOperation<T>(entityClass, this.getPKColumn(), this.getRowMapperEngine());
+            op.setDirtyTracking(this.isDirtyTracking());
             this.setTableName(op.tableName);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * RowMapper的生成方式，子类可重写为RowMapperEngine.GENERATED
+     * @return
+     */
+    protected RowMapperEngine getRowMapperEngine() {
+        return RowMapperEngine.defaultEngine();
+    }
+
+    /**
+     * 是否开启脏检查：开启后查询出的实体记录每列值的哈希，update(entity)只更新值发生变化的列，
+     * 包括改为null的列；不是查询出的实体仍按非null列更新。开启延迟写入时update不使用脏检查
+     * @return 默认false
+     */
+    protected boolean isDirtyTracking() {
+        return false;
+    }
+
+    /**
+     * insertAll/replaceAll的批量写入方式，子类可重写为BulkWriteMode.JDBC_BATCH
+     * @return
+     */
+    protected BulkWriteMode getBulkWriteMode() {
+        return BulkWriteMode.defaultMode();
+    }
+
+    /**
+     * 分页查询取得总记录数的方式，子类可重写为PageMode.EXACT_CONCURRENT、NO_COUNT或ESTIMATED
+     * @return
+     */
+    protected PageMode getPageMode() {
+        return PageMode.EXACT;
+    }
+
+    /**
+     * JDBC批处理方式下每批执行的记录数
+     * @return
+     */
+    protected int getBatchSize() {
+        return 1000;
+    }
+
+    /**
+     * selectStream/streamAll的fetchSize。MySQL默认Integer.MIN_VALUE逐行流式读取；
+     * 连接串中加useCursorFetch=true时可重写为正数，使用服务端游标按批读取
+     * @return
+     */
+    protected int getStreamFetchSize() {
+        return getDialect() == Dialect.MYSQL ? Integer.MIN_VALUE : 1000;
+    }
+
+    /**
+     * 多行语句每块的目标字节数，实际还受max_allowed_packet限制，并按执行耗时调整
+     * @return
+     */
+    protected long getChunkTargetBytes() {
+        return 1L << 20;
+    }
+
+    /**
+     * 多行语句每块的目标执行耗时（毫秒）
+     * @return
+     */
+    protected long getChunkTargetMillis() {
+        return 1000;
+    }
+
+    /**
+     * ingest的候选导入方式，按顺序取第一个适用的。
+     * 默认：H2一千条以上用CSVREAD，其余用JDBC批处理。
+     * LOAD DATA需要连接串、服务端和Druid wall过滤器都放行，不在默认列表中，子类确认环境允许后重写本方法加入
+     * MySqlLoadDataIngestStrategy
+     * @return
+     */
+    protected List<BulkIngestStrategy> getBulkIngestStrategies() {
+        List<BulkIngestStrategy> strategies = ingestStrategies;
+        if (strategies == null) {
+            strategies = Collections.unmodifiableList(Arrays.<BulkIngestStrategy>asList(
+                    new H2CsvReadIngestStrategy(1000),
+                    new JdbcBatchIngestStrategy()));
+            ingestStrategies = strategies;
+        }
+        return strategies;
+    }
+
+    /**
+     * 延迟写入参数，返回非null时insert/update放入缓冲区后立即返回，由后台线程合并后批量写入。
+     * 写入在调用方事务之外由后台线程执行，刷出前查询看不到缓冲区中的记录；写数据源不能是路由数据源（如DynamicDataSource）。
+     * 容器关闭DAO时（destroy）刷出剩余记录
+     * @return 默认null，不开启
+     */
+    protected WriteBehindOptions getWriteBehindOptions() {
+        return null;
+    }
+
     protected String getTableName() {
         return tableName;
     }
@@ -101,6 +235,142 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
         return this.op;
     }
 
+    /**
+     * 列绑定计划缓存命中次数
+     * @return
+     */
+    public long getBindingPlanHits() {
+        return op.getPlanHits();
+    }
+
+    /**
+     * 列绑定计划缓存未命中次数
+     * @return
+     */
+    public long getBindingPlanMisses() {
+        return op.getPlanMisses();
+    }
+
+    /**
+     * QueryRule查询计划缓存命中次数
+     * @return
+     */
+    public long getQueryPlanHits() {
+        return queryPlanCache.getHits();
+    }
+
+    /**
+     * QueryRule查询计划缓存未命中次数（不含IN列表有null而不走缓存的查询）
+     * @return
+     */
+    public long getQueryPlanMisses() {
+        return queryPlanCache.getMisses();
+    }
+
+    /**
+     * QueryRule查询计划缓存命中率
+     * @return
+     */
+    public double getQueryPlanHitRate() {
+        return queryPlanCache.getHitRate();
+    }
+
+    /**
+     * 脏检查当前保存快照的实体数
+     * @return
+     */
+    public int getDirtyTrackedCount() {
+        return op.getTrackedCount();
+    }
+
+    /**
+     * 所有Dao中未关闭的游标查询（selectStream/streamAll）数
+     * @return
+     */
+    public int getOpenStreamCount() {
+        return CursorStream.openCount();
+    }
+
+    /**
+     * 延迟写入缓冲区中等待写入的记录数，未开启时为0
+     * @return
+     */
+    public int getWriteBehindQueueDepth() {
+        WriteBehindBuffer buffer = writeBehind;
+        return buffer == null ? 0 : buffer.getQueueDepth();
+    }
+
+    /**
+     * 与缓冲区中同一主键的记录合并的写入次数
+     * @return
+     */
+    public long getWriteBehindCoalesced() {
+        WriteBehindBuffer buffer = writeBehind;
+        return buffer == null ? 0 : buffer.getCoalesced();
+    }
+
+    public long getWriteBehindFlushCount() {
+        WriteBehindBuffer buffer = writeBehind;
+        return buffer == null ? 0 : buffer.getFlushCount();
+    }
+
+    /**
+     * 刷出时写入失败（已记录日志并丢弃）的记录数
+     * @return
+     */
+    public long getWriteBehindFailedRows() {
+        WriteBehindBuffer buffer = writeBehind;
+        return buffer == null ? 0 : buffer.getFailedRows();
+    }
+
+    /**
+     * 每次刷出的平均耗时（毫秒）
+     * @return
+     */
+    public double getWriteBehindAvgFlushMillis() {
+        WriteBehindBuffer buffer = writeBehind;
+        return buffer == null ? 0 : buffer.getAvgFlushMillis();
+    }
+
+    public double getWriteBehindMaxFlushMillis() {
+        WriteBehindBuffer buffer = writeBehind;
+        return buffer == null ? 0 : buffer.getMaxFlushMillis();
+    }
+
+    /**
+     * 由后台线程刷出延迟写入缓冲区中的全部记录并等待刷出结束，未开启时不做任何事。
+     * 同步执行的写入和删除（delete、deleteAll、deleteBy、merge、insertAll、updateAll、saveAll等）执行前都先调用，
+     * 避免缓冲区中同一主键的记录在之后写入，覆盖或插回同步写入的结果
+     */
+    public void flushWrites() {
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            buffer.flushAndWait();
+        }
+    }
+
+    /**
+     * 关闭延迟写入：刷出剩余记录并停止后台线程，之后insert/update恢复为同步写入
+     */
+    public void closeWriteBehind() {
+        WriteBehindBuffer buffer;
+        synchronized (this) {
+            buffer = writeBehind;
+            writeBehind = null;
+        }
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    /**
+     * 容器关闭时调用：在数据源关闭之前刷出延迟写入的剩余记录
+     */
+    @Override
+    public void destroy() {
+        closeWriteBehind();
+    }
+
     private JdbcTemplate jdbcTemplateReadOnly() {
         return this.jdbcTemplateReadOnly;
     }
@@ -128,7 +398,7 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * ？？？this.jdbcTemplateReadOnly().query()方法中new HashMap<String, Object>()参数有什么用？？？
      */
     protected T get(PK id) throws Exception {
-        return (T)this.doLoad(id, this.op.rowMapper);
+        return (T)this.doLoad(id, this.op.rowMapper());
     }
 
     /**
@@ -138,18 +408,24 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      */
     protected List<T> getAll() throws Exception {
         String sql = "select " + op.allColumn + " from " + getTableName();
-        return this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper, new HashMap<String, Object>());
+        return this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper(), new HashMap<String, Object>());
     }
 
     //利用entity实例进行数据库插入
     @Override
     public PK insertAndReturnId(T entity) throws Exception {
-        return (PK)this.doInsertRuturnKey(parse(entity));
+        flushWrites();
+        return (PK)this.doInsertRuturnKey(op.parseLocal(entity));
     }
 
     @Override
     public boolean insert(T entity) throws Exception {
-        return this.doInsert(parse(entity));
+        WriteBehindBuffer buffer = writeBehind();
+        if (buffer != null) {
+            buffer.enqueue(op.pkField.get(entity), true, op.parseLocal(entity));
+            return true;
+        }
+        return this.doInsert(op.parseLocal(entity));
     }
 
     /**
@@ -159,11 +435,18 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected boolean save(T entity) throws Exception {
+        flushWrites();
         PK pkValue = (PK)op.pkField.get(entity);
+        if (pkValue == null) {
+            return this.doInsert(op.parseLocal(entity));
+        }
+        if (getDialect() != Dialect.GENERIC) {
+            return this.doUpsert(op.parseLocal(entity));
+        }
         if (this.exists(pkValue)) {
-            return this.doUpdate(pkValue, parse(entity)) > 0;
+            return this.doUpdate(pkValue, op.parseLocal(entity)) > 0;
         } else {
-            return this.doInsert(parse(entity));
+            return this.doInsert(op.parseLocal(entity));
         }
     }
 
@@ -174,18 +457,89 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected PK saveAndReturnId(T entity) throws Exception {
+        flushWrites();
         //Field#get(Object obj)方法返回指定对象obj上由此Field表示的字段的值
         Object o = op.pkField.get(entity);
         if (null == o) {
-            return (PK)this.doInsertRuturnKey(parse(entity));
+            return (PK)this.doInsertRuturnKey(op.parseLocal(entity));
         }
         PK pkValue = (PK)o;
+        if (getDialect() != Dialect.GENERIC) {
+            this.doUpsert(op.parseLocal(entity));
+            return pkValue;
+        }
         if (this.exists(pkValue)){
-            this.doUpdate(pkValue, parse(entity));
+            this.doUpdate(pkValue, op.parseLocal(entity));
             return pkValue;
         } else {
-            return (PK)this.doInsertRuturnKey(parse(entity));
+            return (PK)this.doInsertRuturnKey(op.parseLocal(entity));
+        }
+    }
+
+    /**
+     * 批量保存：存在则更新，否则插入。MySQL、H2按每行要写入的列分组，每组一条upsert语句JDBC批处理执行；
+     * 其他数据库逐条save
+     * @param list
+     * @return 每个实体是否写入成功：1 插入或更新了记录，0 没有写入，顺序与list一致
+     * @throws Exception
+     */
+    protected int[] saveAll(List<T> list) throws Exception {
+        flushWrites();
+        int[] counts = new int[list.size()];
+        Dialect dialect = getDialect();
+        if (dialect == Dialect.GENERIC) {
+            for (int i = 0; i < list.size(); i++) {
+                counts[i] = save(list.get(i)) ? 1 : 0;
+            }
+            return counts;
         }
+        final int pkIndex = op.columnIndex(getPKColumn());
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            ParsedRow row = op.parseLocal(list.get(i));
+            //H2的merge需要主键，主键为空时直接insert
+            StatementTextCache.Kind kind = dialect == Dialect.H2 && row.isNull(pkIndex)
+                    ? StatementTextCache.Kind.INSERT : StatementTextCache.Kind.UPSERT;
+            String sql = statementSql(kind, row);
+            if (sql.isEmpty()) {
+                continue;
+            }
+            List<Integer> group = groups.get(sql);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(sql, group);
+            }
+            group.add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : groups.entrySet()) {
+            batchExecute(entry.getKey(), list, entry.getValue(), false, null, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * 取数据库方言，首次调用时根据写数据源的DatabaseMetaData判断，子类可重写为固定值
+     * @return
+     */
+    protected Dialect getDialect() {
+        Dialect d = dialect;
+        if (d == null) {
+            try {
+                d = jdbcTemplateWrite().execute(new ConnectionCallback<Dialect>() {
+                    @Override
+                    public Dialect doInConnection(Connection con) throws SQLException {
+                        return Dialect.of(con.getMetaData().getDatabaseProductName());
+                    }
+                });
+            } catch (Exception e) {
+                log.warn("获取数据库类型失败，按GENERIC处理：" + e.getMessage());
+            }
+            if (d == null) {
+                d = Dialect.GENERIC;
+            }
+            dialect = d;
+        }
+        return d;
     }
 
     /**
@@ -196,7 +550,151 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      */
     @Override
     public boolean update(T entity) throws Exception {
-        return this.doUpdate(op.pkField.get(entity), parse(entity)) > 0;
+        Object pkValue = op.pkField.get(entity);
+        WriteBehindBuffer buffer = pkValue == null ? null : writeBehind();
+        if (buffer != null) {
+            buffer.enqueue(pkValue, false, op.parseLocal(entity));
+            return true;
+        }
+        ParsedRow row = op.parseLocal(entity);
+        int[] changed = pkValue == null ? null : op.changedColumns(entity, row);
+        if (changed != null) {
+            return this.doDirtyUpdate(entity, pkValue, row, changed);
+        }
+        return this.doUpdate(pkValue, row) > 0;
+    }
+
+    /**
+     * 只更新与快照相比发生变化且允许更新的列，成功后刷新快照
+     * @param entity
+     * @param pkValue
+     * @param row
+     * @param changed 发生变化的列下标
+     * @return 没有需要更新的列时不执行语句，返回true
+     */
+    private boolean doDirtyUpdate(T entity, Object pkValue, final ParsedRow row, int[] changed) {
+        String pkColumn = getPKColumn();
+        int n = 0;
+        for (int i : changed) {
+            if (op.columnMappings[i].updatatable && !op.columns[i].equals(pkColumn)) {
+                changed[n++] = i;
+            }
+        }
+        if (n == 0) {
+            return true;
+        }
+        final int[] indexes = Arrays.copyOf(changed, n);
+        final Object pk = pkValue;
+        int ret = this.jdbcTemplateWrite().update(columnSql(StatementTextCache.Kind.UPDATE, indexes), new PreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps) throws SQLException {
+                for (int k = 0; k < indexes.length; k++) {
+                    StatementCreatorUtils.setParameterValue(ps, k + 1, SqlTypeValue.TYPE_UNKNOWN, row.values[indexes[k]]);
+                }
+                StatementCreatorUtils.setParameterValue(ps, indexes.length + 1, SqlTypeValue.TYPE_UNKNOWN, pk);
+            }
+        });
+        if (ret > 0) {
+            op.snapshot(entity, row);
+        }
+        return ret > 0;
+    }
+
+    /**
+     * 批量更新：按每个实体要更新的列（非null且允许更新的列）分组，每组一条update语句，按批次JDBC批处理执行
+     * @param list 实体的主键不能为空
+     * @return 每个实体是否更新成功：1 更新了记录，0 没有匹配的记录，顺序与list一致
+     * @throws Exception
+     */
+    @Override
+    public int[] updateAll(List<T> list) throws Exception {
+        flushWrites();
+        int[] counts = new int[list.size()];
+        //语句文本来自statementCache，相同列组合的语句是同一个字符串对象
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            String sql = statementSql(StatementTextCache.Kind.UPDATE, op.parseLocal(list.get(i)));
+            if (sql.isEmpty()) {
+                continue;
+            }
+            List<Integer> group = groups.get(sql);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(sql, group);
+            }
+            group.add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : groups.entrySet()) {
+            batchExecute(entry.getKey(), list, entry.getValue(), true, null, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * 批量更新指定的列（值为null时更新为null），所有实体使用同一条update语句，按批次JDBC批处理执行
+     * @param list 实体的主键不能为空
+     * @param columns 要更新的列名
+     * @return 每个实体是否更新成功：1 更新了记录，0 没有匹配的记录，顺序与list一致
+     * @throws Exception
+     */
+    @Override
+    public int[] updateAll(List<T> list, String... columns) throws Exception {
+        flushWrites();
+        int[] indexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int index = op.columnIndex(columns[i]);
+            if (index < 0 || !op.columnMappings[index].updatatable || columns[i].equals(getPKColumn())) {
+                throw new IllegalArgumentException("column " + columns[i] + " can not be updated.");
+            }
+            indexes[i] = index;
+        }
+        int[] counts = new int[list.size()];
+        if (indexes.length == 0 || list.isEmpty()) {
+            return counts;
+        }
+        List<Integer> all = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            all.add(i);
+        }
+        batchExecute(columnSql(StatementTextCache.Kind.UPDATE, indexes), list, all, true, indexes, counts);
+        return counts;
+    }
+
+    /**
+     * 对list中rows下标的实体批处理执行sql，结果写入counts的对应位置。
+     * 驱动返回的影响行数不统一（rewriteBatchedStatements改写后为SUCCESS_NO_INFO，on duplicate key update更新时为2），
+     * 统一为：成功写入为1，没有写入或执行失败为0
+     * @param sql
+     * @param list
+     * @param rows 参与本组的实体下标
+     * @param update true：update语句，绑定要更新的列和主键；false：insert/upsert语句，绑定要插入的列
+     * @param indexes update时要更新的列下标，为null时按每行非null且允许更新的列
+     * @param counts
+     */
+    private void batchExecute(String sql, final List<T> list, List<Integer> rows, final boolean update, final int[] indexes, int[] counts) {
+        final int pkIndex = op.columnIndex(getPKColumn());
+        int[][] results = jdbcTemplateWrite().batchUpdate(sql, rows, getBatchSize(), new ParameterizedPreparedStatementSetter<Integer>() {
+            @Override
+            public void setValues(PreparedStatement ps, Integer i) throws SQLException {
+                ParsedRow row = op.parseLocal(list.get(i));
+                if (!update) {
+                    bindRow(ps, row, false, null);
+                } else if (indexes == null) {
+                    bindRow(ps, row, true, row.values[pkIndex]);
+                } else {
+                    for (int k = 0; k < indexes.length; k++) {
+                        StatementCreatorUtils.setParameterValue(ps, k + 1, SqlTypeValue.TYPE_UNKNOWN, row.values[indexes[k]]);
+                    }
+                    StatementCreatorUtils.setParameterValue(ps, indexes.length + 1, SqlTypeValue.TYPE_UNKNOWN, row.values[pkIndex]);
+                }
+            }
+        });
+        int n = 0;
+        for (int[] batch : results) {
+            for (int count : batch) {
+                counts[rows.get(n++)] = count > 0 || count == Statement.SUCCESS_NO_INFO ? 1 : 0;
+            }
+        }
     }
 
     /**
@@ -207,6 +705,7 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected int update(String sql, Object... args) throws Exception {
+        flushWrites();
         return jdbcTemplateWrite().update(sql, args);
     }
 
@@ -218,40 +717,251 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected int update(String sql, Map<String, ?> paraMap) throws Exception {
+        flushWrites();
         //？？？这个Map类型的paraMap是用Object... 接收的。这是怎么处理的？？？
         return jdbcTemplateWrite().update(sql, paraMap);
     }
 
     @Override
     public int insertAll(List<T> list) throws Exception {
-        int count = 0, len = list.size(), step = 50000;
-        Map<String, PropertyMapping> pm = op.mappings;
-        int maxPage = (len % step == 0) ? (len / step) : (len / step + 1);
-        for (int i = 0; i <= maxPage; i++) {
-            Page<T> page = pagination(list, i, step);
-            String sql = "insert into " + getTableName() + "(" +op.allColumn+ ") values ";
-            StringBuffer valstr = new StringBuffer();
-            Object[] values = new Object[pm.size() * page.getRows().size()];
-            for (int j = 0; j < page.getRows().size(); j++) {
-                if (j > 0 && j < page.getRows().size()) { valstr.append(","); }
-                valstr.append("(");
-                int k = 0;
-                for (PropertyMapping p : pm.values()) {
-                    values[(j * pm.size()) + k] = p.getter.invoke(page.getRows().get(j));
-                    if (k > 0 && k < pm.size()){ valstr.append(","); }
-                    valstr.append("?");
-                    k ++;
+        flushWrites();
+        if (getBulkWriteMode() == BulkWriteMode.JDBC_BATCH) {
+            return batchWrite(StatementTextCache.Kind.INSERT, list);
+        }
+        return multiRowWrite("insert into ", list);
+    }
+
+    /**
+     * 批量导入：按数据库和记录数从getBulkIngestStrategies()中选择导入方式，写入全部列
+     * @param list
+     * @return 导入的记录数
+     * @throws Exception
+     */
+    public int ingest(List<T> list) throws Exception {
+        flushWrites();
+        if (list == null || list.isEmpty()) {
+            return 0;
+        }
+        Dialect dialect = getDialect();
+        for (BulkIngestStrategy strategy : getBulkIngestStrategies()) {
+            if (strategy.supports(dialect, list.size())) {
+                BulkIngestContext<T> context = new BulkIngestContext<T>(jdbcTemplateWrite(), op, getTableName(),
+                        allColumnSql(StatementTextCache.Kind.INSERT), getBatchSize());
+                return strategy.ingest(context, list);
+            }
+        }
+        throw new IllegalStateException("no bulk ingest strategy supports " + dialect + " with " + list.size() + " rows");
+    }
+
+    /**
+     * 并行批量导入：list按options.partitionSize分区，options.parallelism个线程各自从写数据源取连接并行写入，
+     * 每个分区一个事务。写数据源是路由数据源（如DynamicDataSource）时不支持：工作线程中没有调用线程的路由设置
+     * @param list
+     * @param options
+     * @return 吞吐量和每个分区的执行情况
+     */
+    public BulkLoadReport bulkLoad(List<T> list, BulkLoadOptions options) {
+        return bulkLoad(list.iterator(), options);
+    }
+
+    /**
+     * 并行批量导入，按需从stream中读取记录
+     * @param stream
+     * @param options
+     * @return
+     */
+    public BulkLoadReport bulkLoad(Stream<? extends T> stream, BulkLoadOptions options) {
+        return bulkLoad(stream.iterator(), options);
+    }
+
+    /**
+     * 并行批量导入，按需从iterator中读取记录，同时在内存中的分区最多为并行数的两倍
+     * @param iterator
+     * @param options
+     * @return
+     */
+    public BulkLoadReport bulkLoad(Iterator<? extends T> iterator, BulkLoadOptions options) {
+        flushWrites();
+        DataSource dataSource = getDataSourceWrite();
+        if (isRoutingDataSource(dataSource)) {
+            throw new IllegalStateException("bulkLoad can not write through routing data source "
+                    + dataSource.getClass().getName() + ": worker threads do not carry the caller's routing key");
+        }
+        String sql = allColumnSql(StatementTextCache.Kind.INSERT);
+        return new ParallelBulkLoader<T>(dataSource, op, sql, getBatchSize(), options).load(iterator);
+    }
+
+    //按调用线程路由的数据源（如DynamicDataSource），在其他线程中取连接会连到默认数据源
+    private static boolean isRoutingDataSource(DataSource dataSource) {
+        if (dataSource instanceof AbstractRoutingDataSource) {
+            return true;
+        }
+        try {
+            return dataSource != null && dataSource.isWrapperFor(AbstractRoutingDataSource.class);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 批量插入并取回自增主键：单行insert语句（不含主键列）按块addBatch/executeBatch，
+     * 每块执行后按顺序把生成的主键写回实体的主键属性，每块的行数与insertAll一样由ChunkPlanner决定
+     * @param list 主键为空的实体
+     * @return 生成的主键，顺序与list一致
+     * @throws Exception
+     */
+    public List<PK> insertAllReturningIds(final List<T> list) throws Exception {
+        flushWrites();
+        final List<PK> ids = new ArrayList<>(list.size());
+        if (list.isEmpty()) {
+            return ids;
+        }
+        final int pkIndex = op.columnIndex(getPKColumn());
+        int[] columns = new int[op.columns.length];
+        int size = 0;
+        for (int i = 0; i < op.columns.length; i++) {
+            if (i != pkIndex && op.columnMappings[i].inserttable) {
+                columns[size++] = i;
+            }
+        }
+        final int[] indexes = Arrays.copyOf(columns, size);
+        final String sql = columnSql(StatementTextCache.Kind.INSERT, indexes);
+        final PropertyMapping pk = op.columnMappings[pkIndex];
+        final ChunkPlanner planner = writePlanner();
+        jdbcTemplateWrite().execute(new ConnectionCallback<Void>() {
+            @Override
+            public Void doInConnection(Connection con) throws SQLException {
+                PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                try {
+                    int from = 0, len = list.size();
+                    while (from < len) {
+                        int rows = planner.nextChunk(list, from);
+                        for (int j = 0; j < rows; j++) {
+                            ParsedRow row = op.parseLocal(list.get(from + j));
+                            for (int k = 0; k < indexes.length; k++) {
+                                StatementCreatorUtils.setParameterValue(ps, k + 1, SqlTypeValue.TYPE_UNKNOWN, row.values[indexes[k]]);
+                            }
+                            ps.addBatch();
+                        }
+                        long begin = System.nanoTime();
+                        ps.executeBatch();
+                        readGeneratedKeys(ps, list.subList(from, from + rows), pk, ids);
+                        from += rows;
+                        planner.record(rows, System.nanoTime() - begin, from < len);
+                    }
+                } finally {
+                    JdbcUtils.closeStatement(ps);
+                }
+                return null;
+            }
+        });
+        return ids;
+    }
+
+    //按顺序把生成的主键写回entities的主键属性
+    private void readGeneratedKeys(PreparedStatement ps, List<T> entities, PropertyMapping pk, List<PK> ids) throws SQLException {
+        ResultSet rs = ps.getGeneratedKeys();
+        try {
+            ColumnReader reader = pk.reader;
+            if (reader == null) {
+                Class<?> type = pk.setter.getParameterTypes()[0];
+                reader = ColumnReader.object(pk, TypeConverters.forColumn(type, rs.getMetaData().getColumnClassName(1)));
+            }
+            int n = 0;
+            while (rs.next() && n < entities.size()) {
+                T entity = entities.get(n++);
+                reader.read(rs, 1, entity);
+                ids.add((PK) pk.get(entity));
+            }
+            if (n < entities.size()) {
+                throw new SQLException("generated keys: expected " + entities.size() + ", got " + n);
+            }
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+        }
+    }
+
+    /**
+     * JDBC批处理写入：全部列的单行insert/replace语句，每getBatchSize()条执行一次executeBatch
+     * @param kind INSERT或REPLACE
+     * @param list
+     * @return 各批次影响记录数之和，驱动返回SUCCESS_NO_INFO的记录按1条计
+     */
+    private int batchWrite(StatementTextCache.Kind kind, List<T> list) {
+        if (list == null || list.isEmpty()) {
+            return 0;
+        }
+        String sql = allColumnSql(kind);
+        int[][] results = jdbcTemplateWrite().batchUpdate(sql, list, getBatchSize(), new ParameterizedPreparedStatementSetter<T>() {
+            @Override
+            public void setValues(PreparedStatement ps, T entity) throws SQLException {
+                ParsedRow row = op.parseLocal(entity);
+                for (int i = 0; i < row.size(); i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, row.values[i]);
+                }
+            }
+        });
+        return sumBatchCounts(results);
+    }
+
+    //累加批处理结果，SUCCESS_NO_INFO（rewriteBatchedStatements改写后常见）按1条计，EXECUTE_FAILED不计
+    private int sumBatchCounts(int[][] results) {
+        int count = 0;
+        for (int[] batch : results) {
+            for (int n : batch) {
+                if (n >= 0) {
+                    count += n;
+                } else if (n == Statement.SUCCESS_NO_INFO) {
+                    count++;
                 }
-                valstr.append(")");
             }
-            int result = jdbcTemplateWrite().update(sql + valstr.toString(), values);
-            count += result;
         }
         return count;
     }
 
+    /**
+     * 包含全部列的单行insert/replace语句，按op.columns的顺序
+     * @param kind
+     * @return
+     */
+    private String allColumnSql(StatementTextCache.Kind kind) {
+        return columnSql(kind, null);
+    }
+
+    /**
+     * 包含指定列的单行语句，列按op.columns的顺序，update语句以主键为条件
+     * @param kind
+     * @param indexes 列下标，为null时包含全部列
+     * @return
+     */
+    private String columnSql(StatementTextCache.Kind kind, int[] indexes) {
+        String tableName = getTableName();
+        StatementTextCache.Key key = statementCache.probe(tableName, kind, op.columns.length);
+        if (indexes == null) {
+            for (int i = 0; i < op.columns.length; i++) {
+                key.set(i);
+            }
+        } else {
+            for (int i : indexes) {
+                key.set(i);
+            }
+        }
+        String sql = statementCache.get(key);
+        if (sql == null) {
+            if (kind == StatementTextCache.Kind.UPDATE) {
+                sql = makeSimpleUpdateSql(tableName, getPKColumn(), key);
+            } else {
+                sql = makeSimpleInsertSql(kind == StatementTextCache.Kind.REPLACE ? "replace into " : "insert into ",
+                        tableName, key);
+            }
+            sql = statementCache.put(key, sql);
+        }
+        return sql;
+    }
+
     protected boolean replaceOne(T entity) throws Exception{
-        return this.doReplace(parse(entity));
+        flushWrites();
+        return this.doReplace(op.parseLocal(entity));
     }
 
     /**
@@ -261,34 +971,99 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected int replaceAll(List<T> list) throws Exception {
-        int count = 0, len = list.size(), step = 50000;
-        Map<String, PropertyMapping> pm = op.mappings;
-        int maxPage = (len % step == 0) ? (len / step) : (len / step + 1);
-        for (int i = 0; i <= maxPage; i++) {
-            Page<T> page = pagination(list, i, step);
-            String sql = "replace into" + getTableName() + "(" +op.allColumn+ ") values ";
-            StringBuffer valstr = new StringBuffer();
-            Object[] values = new Object[pm.size() * page.getRows().size()];
-            for (int j = 0; j < page.getRows().size(); j ++) {
-                if(j > 0 && j < page.getRows().size()){ valstr.append(","); }
-                valstr.append("(");
-                int k = 0;
-                for (PropertyMapping p : pm.values()) {
-                    values[(j * pm.size()) + k] = p.getter.invoke(page.getRows().get(j));
-                    if(k > 0 && k < pm.size()){ valstr.append(","); }
-                    valstr.append("?");
-                    k ++;
+        flushWrites();
+        if (getBulkWriteMode() == BulkWriteMode.JDBC_BATCH) {
+            return batchWrite(StatementTextCache.Kind.REPLACE, list);
+        }
+        return multiRowWrite("replace into ", list);
+    }
+
+    /**
+     * 多行语句写入：verb 表名 (列1,列2...) values (?,?...),(?,?...),...，每块的行数由ChunkPlanner决定
+     * @param verb "insert into "或"replace into "
+     * @param list
+     * @return
+     */
+    private int multiRowWrite(String verb, List<T> list) {
+        ChunkPlanner planner = writePlanner();
+        PropertyMapping[] pms = op.columnMappings;
+        String sql = verb + getTableName() + "(" + StringUtils.join(op.columns, ",") + ") values ";
+        StringBuilder tuple = new StringBuilder(pms.length * 2 + 2).append("(");
+        for (int k = 0; k < pms.length; k++) {
+            tuple.append(k > 0 ? ",?" : "?");
+        }
+        tuple.append(")");
+        int count = 0, from = 0, len = list.size();
+        while (from < len) {
+            int rows = planner.nextChunk(list, from);
+            StringBuilder valstr = new StringBuilder(sql.length() + rows * (tuple.length() + 1)).append(sql);
+            Object[] values = new Object[pms.length * rows];
+            for (int j = 0; j < rows; j++) {
+                if (j > 0) { valstr.append(","); }
+                valstr.append(tuple);
+                T entity = list.get(from + j);
+                for (int k = 0; k < pms.length; k++) {
+                    values[(j * pms.length) + k] = pms[k].get(entity);
                 }
-                valstr.append(")");
             }
-            int result = jdbcTemplateWrite().update(sql + valstr.toString(), values);
-            count += result;
+            long begin = System.nanoTime();
+            count += jdbcTemplateWrite().update(valstr.toString(), values);
+            from += rows;
+            planner.record(rows, System.nanoTime() - begin, from < len);
         }
         return count;
     }
 
+    private ChunkPlanner writePlanner() {
+        ChunkPlanner planner = writePlanner;
+        if (planner == null) {
+            planner = new ChunkPlanner(op.columnMappings, getChunkTargetBytes(), getChunkTargetMillis(), 50000);
+            planner.setPacketLimit(maxAllowedPacket());
+            writePlanner = planner;
+        }
+        return planner;
+    }
+
+    private ChunkPlanner deletePlanner() {
+        ChunkPlanner planner = deletePlanner;
+        if (planner == null) {
+            PropertyMapping[] pk = { op.mappings.get(op.pkField.getName()) };
+            planner = new ChunkPlanner(pk, getChunkTargetBytes(), getChunkTargetMillis(), 10000);
+            planner.setPacketLimit(maxAllowedPacket());
+            deletePlanner = planner;
+        }
+        return planner;
+    }
+
+    /**
+     * 服务端max_allowed_packet，查询失败（如非MySQL）时按4MB计
+     * @return
+     */
+    private long maxAllowedPacket() {
+        if (maxAllowedPacket < 0) {
+            long packet = 4L << 20;
+            if (getDialect() != Dialect.MYSQL) {
+                maxAllowedPacket = packet;
+                return packet;
+            }
+            try {
+                Long value = jdbcTemplateWrite().queryForObject("select @@max_allowed_packet", Long.class);
+                if (value != null) {
+                    packet = value;
+                }
+            } catch (Exception e) {
+                log.warn("获取max_allowed_packet失败，按" + packet + "字节计算：" + e.getMessage());
+            }
+            maxAllowedPacket = packet;
+        }
+        return maxAllowedPacket;
+    }
+
     @Override
     public boolean delete(T entity) throws Exception {
+        //先写入缓冲区中的记录，避免删除后又被延迟写入插回
+        flushWrites();
+        op.forget(entity);
         return this.doDelete(op.pkField.get(entity)) > 0;
     }
 
@@ -299,32 +1074,145 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     public int deleteAll(List<T> list) throws Exception {
+        flushWrites();
         String pkName = op.pkField.getName();
-        int count = 0, len = list.size(), step = 1000;
-        Map<String, PropertyMapping> pm = op.mappings;
-        int maxPage = (len % step == 0) ? (len / step) : (len / step + 1);
-        for (int i = 0; i <= maxPage; i++) {
-            StringBuffer valstr = new StringBuffer();
-            Page<T> page = pagination(list, i, step);
-            Object[] values = new Object[page.getRows().size()];
-            for (int j = 0; j < page.getRows().size(); j++) {
-                if (j > 0 && j < page.getRows().size()) { valstr.append(","); }
-                values[j] = pm.get(pkName).getter.invoke(page.getRows().get(j));
+        PropertyMapping pm = op.mappings.get(pkName);
+        ChunkPlanner planner = deletePlanner();
+        int count = 0, from = 0, len = list.size();
+        while (from < len) {
+            int rows = planner.nextChunk(list, from);
+            StringBuilder valstr = new StringBuilder(rows * 2);
+            Object[] values = new Object[rows];
+            for (int j = 0; j < rows; j++) {
+                if (j > 0) { valstr.append(","); }
+                values[j] = pm.get(list.get(from + j));
                 valstr.append("?");
             }
-            String sql = "delete from " + getTableName() + " where " + pkName + " in (" +valstr.toString() + ")";
-            int result = jdbcTemplateWrite.update(sql, values);
-            count += result;
+            String sql = "delete from " + getTableName() + " where " + pkName + " in (" + valstr.toString() + ")";
+            long begin = System.nanoTime();
+            count += jdbcTemplateWrite().update(sql, values);
+            from += rows;
+            planner.record(rows, System.nanoTime() - begin, from < len);
         }
         return count;
     }
 
+    /**
+     * 分块删除满足条件的记录，每块一条语句，不限速
+     * @param queryRule 删除条件，排序被忽略
+     * @param chunkSize 每块删除的记录数
+     * @return 删除的记录总数
+     * @throws Exception
+     */
+    public long deleteBy(QueryRule queryRule, int chunkSize) throws Exception {
+        return deleteBy(queryRule, chunkSize, 0, null);
+    }
+
+    /**
+     * 分块删除满足条件的记录：MySQL/H2循环执行 delete ... limit chunkSize，其他数据库按主键顺序取一块主键（用maxRows限制行数，不依赖limit语法）再按主键删除，
+     * 直到没有满足条件的记录。每块自动提交，锁和undo log只涉及一块记录，不应在事务中调用
+     * @param queryRule 删除条件，排序被忽略
+     * @param chunkSize 每块删除的记录数
+     * @param pauseMillis 两块之间暂停的时间，用于限速，0为不暂停
+     * @param listener 进度回调，可以为null
+     * @return 删除的记录总数，线程被中断时返回已删除的记录数
+     * @throws Exception
+     */
+    public long deleteBy(QueryRule queryRule, int chunkSize, long pauseMillis, DeleteProgressListener listener) throws Exception {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        flushWrites();
+        QueryRulePlan plan = queryPlanCache.plan(queryRule);
+        Object[] values = plan.bind(queryRule);
+        String tableName = getTableName();
+        String pkColumn = getPKColumn();
+        Dialect dialect = getDialect();
+        //MySQL按主键顺序删除，结果与binlog格式无关；H2的delete不支持order by
+        String limitSql = dialect == Dialect.MYSQL ? " order by " + pkColumn + " limit " + chunkSize
+                : dialect == Dialect.H2 ? " limit " + chunkSize : null;
+        //其他数据库的select不一定支持limit，用maxRows限制每块读取的主键数
+        JdbcTemplate chunkTemplate = null;
+        if (limitSql == null) {
+            chunkTemplate = new JdbcTemplate(getDataSourceWrite());
+            chunkTemplate.setMaxRows(chunkSize);
+        }
+        long begin = System.nanoTime();
+        long total = 0;
+        int chunk = 0;
+        Object lastPk = null;
+        while (true) {
+            int deleted;
+            boolean more;
+            if (limitSql != null) {
+                deleted = jdbcTemplateWrite().update("delete from " + tableName + plan.whereSql + limitSql, values);
+                more = deleted == chunkSize;
+            } else {
+                //主键大于上一块最后一个主键的下一块，从写数据源读取，避免从库延迟
+                String where = lastPk == null ? plan.whereSql : whereAnd(plan.whereSql, pkColumn + " > ?");
+                Object[] args = lastPk == null ? values : append(values, lastPk);
+                List<Object> ids = chunkTemplate.queryForList("select " + pkColumn + " from " + tableName + where
+                        + " order by " + pkColumn, Object.class, args);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                StringBuilder in = new StringBuilder(ids.size() * 2);
+                for (int i = 0; i < ids.size(); i++) {
+                    in.append(i == 0 ? "?" : ",?");
+                }
+                Object[] deleteArgs = Arrays.copyOf(values, values.length + ids.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    deleteArgs[values.length + i] = ids.get(i);
+                }
+                //再次带上删除条件，取主键之后被修改为不满足条件的记录不删除
+                deleted = jdbcTemplateWrite().update("delete from " + tableName
+                        + whereAnd(plan.whereSql, pkColumn + " in (" + in + ")"), deleteArgs);
+                lastPk = ids.get(ids.size() - 1);
+                more = ids.size() == chunkSize;
+            }
+            total += deleted;
+            chunk++;
+            if (listener != null) {
+                listener.progress(chunk, deleted, total, (System.nanoTime() - begin) / 1000000);
+            }
+            if (!more) {
+                break;
+            }
+            if (pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("分块删除" + tableName + "被中断，已删除" + total + "条");
+                    break;
+                }
+            }
+        }
+        log.info("分块删除" + tableName + "完成，共" + chunk + "块，删除" + total + "条，耗时" + (System.nanoTime() - begin) / 1000000 + "ms");
+        return total;
+    }
+
+    //在" where ... "后追加and条件，原条件加括号，避免其中的or改变优先级
+    private static String whereAnd(String whereSql, String condition) {
+        if (whereSql.isEmpty()) {
+            return " where " + condition + " ";
+        }
+        return " where (" + whereSql.substring(7).trim() + ") and " + condition + " ";
+    }
+
+    private static Object[] append(Object[] values, Object value) {
+        Object[] result = Arrays.copyOf(values, values.length + 1);
+        result[values.length] = value;
+        return result;
+    }
+
     /**
      * 根据主键ID删除数据
      * @param id
      * @throws Exception
      */
     protected  void deleteByPK(PK id) throws Exception {
+        flushWrites();
         this.doDelete(id);
     }
 
@@ -387,7 +1275,89 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @return
      */
     protected boolean exists(PK id) throws Exception{
-        return null != this.doLoad(id, this.op.rowMapper);
+        String sql = "select 1 from " + getTableName() + " where " + getPKColumn() + " = ?";
+        return !this.jdbcTemplateReadOnly().queryForList(sql, Integer.class, id).isEmpty();
+    }
+
+    /**
+     * 批量检查主键是否存在：去重后每EXISTS_CHUNK个主键一条 select 主键 from 表名 where 主键 in (...)
+     * @param ids
+     * @return 存在的主键
+     * @throws Exception
+     */
+    public Set<PK> existsAll(Collection<PK> ids) throws Exception {
+        final Set<PK> result = new HashSet<>();
+        Class<PK> type = (Class<PK>) boxed(op.pkField.getType());
+        for (List<Object> chunk : existsChunks(ids)) {
+            result.addAll(this.jdbcTemplateReadOnly().queryForList(existsSql(chunk.size()), type, chunk.toArray()));
+        }
+        return result;
+    }
+
+    /**
+     * 数字主键的批量存在检查，结果为基本类型long的集合，不装箱
+     * @param ids
+     * @return 存在的主键
+     * @throws Exception
+     */
+    public LongHashSet existsAllLong(Collection<? extends Number> ids) throws Exception {
+        final LongHashSet result = new LongHashSet(ids.size());
+        for (List<Object> chunk : existsChunks(ids)) {
+            this.jdbcTemplateReadOnly().query(existsSql(chunk.size()), new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    result.add(rs.getLong(1));
+                }
+            }, chunk.toArray());
+        }
+        return result;
+    }
+
+    //existsAll每条语句的主键个数
+    private static final int EXISTS_CHUNK = 1000;
+
+    //去重并按EXISTS_CHUNK分块，忽略null
+    private List<List<Object>> existsChunks(Collection<?> ids) {
+        List<List<Object>> chunks = new ArrayList<>();
+        List<Object> chunk = null;
+        for (Object id : new LinkedHashSet<Object>(ids)) {
+            if (id == null) {
+                continue;
+            }
+            if (chunk == null || chunk.size() == EXISTS_CHUNK) {
+                chunk = new ArrayList<>(EXISTS_CHUNK);
+                chunks.add(chunk);
+            }
+            chunk.add(id);
+        }
+        return chunks;
+    }
+
+    private String existsSql(int size) {
+        StringBuilder sql = new StringBuilder(64 + size * 2);
+        sql.append("select ").append(getPKColumn()).append(" from ").append(getTableName())
+                .append(" where ").append(getPKColumn()).append(" in (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(")").toString();
+    }
+
+    //基本类型转为包装类型，用于按主键类型读取单列结果
+    private static Class<?> boxed(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == long.class) {
+            return Long.class;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        }
+        return type;
     }
 
     /**
@@ -397,11 +1367,9 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected long getCount(QueryRule queryRule) throws Exception {
-        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
-        Object[] values = builder.getValues();
-        String ws = removeFirstAnd(builder.getWhereSql());
-        String whereSql = ("".equals(ws) ? ws : (" where " + ws));
-        String countSql = "select count(1) from " + getTableName() + whereSql;
+        QueryRulePlan plan = queryPlanCache.plan(queryRule);
+        Object[] values = plan.bind(queryRule);
+        String countSql = "select count(1) from " + getTableName() + plan.whereSql;
         return (Long) this.jdbcTemplateReadOnly().queryForMap(countSql, values).get("count(1)");
     }
 
@@ -434,6 +1402,7 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
 
     /**
      * 将pojoList的元素复制到poList中，并删除poList没有匹配上的元素，poList不增加新元素。
+     * 没有匹配上的元素用deleteAll按主键分块批量删除
      * @param pojoList
      * @param poList
      * @param idName
@@ -441,23 +1410,90 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected void mergeList(List<T> pojoList, List<T> poList, String idName, boolean isCopyNull) throws Exception {
-        Map<Object, Object> map = new HashMap<>();
-        Map<String, PropertyMapping> pm = op.mappings;
-        for (Object element : pojoList) {
-            Object key;
-            key = pm.get(idName).getter.invoke(element);
-            map.put(key, element);
+        flushWrites();
+        PropertyMapping id = op.mappings.get(idName);
+        Map<Object, T> map = new HashMap<>();
+        for (T element : pojoList) {
+            map.put(id.get(element), element);
         }
+        List<T> deletes = new ArrayList<>();
         for (Iterator<T> it = poList.iterator(); it.hasNext();) {
             T element = it.next();
-            Object key = pm.get(idName).getter.invoke(element);
-            if (!map.containsKey(key)) {
-                delete(element);
+            T pojo = map.get(id.get(element));
+            if (pojo == null) {
+                deletes.add(element);
                 it.remove();
             } else {
-                DataUtils.copySimpleObject(map.get(key), element, isCopyNull);
+                op.copy(pojo, element, isCopyNull);
             }
         }
+        if (!deletes.isEmpty()) {
+            deleteAll(deletes);
+        }
+    }
+
+    /**
+     * 以pojoList为准同步数据库：一次遍历算出要插入、更新、删除的记录，再分别用deleteAll、updateAll、insertAll批量执行，
+     * 每块只需一次往返。需要原子性时应在事务中调用
+     * @param pojoList 目标数据，主键为空或在poList中没有匹配的插入，主键重复时以最后一个为准
+     * @param poList 数据库中的现有数据，在pojoList中没有匹配的删除，有匹配的复制pojo的属性，有变化的更新
+     * @param isCopyNull pojo中的null值是否覆盖po的值（并更新为null）
+     * @return 插入、更新、删除的记录数
+     * @throws Exception
+     */
+    public MergeResult merge(List<T> pojoList, List<T> poList, boolean isCopyNull) throws Exception {
+        flushWrites();
+        PropertyMapping id = op.mappings.get(getPKColumn());
+        Map<Object, T> pos = new HashMap<>(poList.size() * 4 / 3 + 1);
+        for (T po : poList) {
+            pos.put(id.get(po), po);
+        }
+        //pojoList中主键相同的只处理最后一个，否则前一个取走匹配的po后，后一个会被当作新记录插入，主键冲突
+        Map<Object, T> last = new HashMap<>(pojoList.size() * 4 / 3 + 1);
+        for (T pojo : pojoList) {
+            Object key = id.get(pojo);
+            if (key != null) {
+                last.put(key, pojo);
+            }
+        }
+        List<T> inserts = new ArrayList<>();
+        List<T> updates = new ArrayList<>();
+        for (T pojo : pojoList) {
+            Object key = id.get(pojo);
+            if (key != null && last.get(key) != pojo) {
+                continue;
+            }
+            T po = key == null ? null : pos.remove(key);
+            if (po == null) {
+                inserts.add(pojo);
+            } else if (op.copy(pojo, po, isCopyNull)) {
+                updates.add(po);
+            }
+        }
+        //剩下的是没有匹配上的记录
+        List<T> deletes = new ArrayList<>(pos.values());
+        int deleted = deletes.isEmpty() ? 0 : deleteAll(deletes);
+        int updated = 0;
+        if (!updates.isEmpty()) {
+            //复制null时按全部可更新列更新，否则按每个实体的非null列分组更新
+            int[] counts = isCopyNull ? updateAll(updates, updatableColumns()) : updateAll(updates);
+            for (int count : counts) {
+                updated += count;
+            }
+        }
+        int inserted = inserts.isEmpty() ? 0 : insertAll(inserts);
+        return new MergeResult(inserted, updated, deleted);
+    }
+
+    //除主键外允许更新的列
+    private String[] updatableColumns() {
+        List<String> columns = new ArrayList<>();
+        for (int i = 0; i < op.columns.length; i++) {
+            if (op.columnMappings[i].updatatable && !op.columns[i].equals(getPKColumn())) {
+                columns.add(op.columns[i]);
+            }
+        }
+        return columns.toArray(new String[columns.size()]);
     }
 
     /**
@@ -619,18 +1655,10 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      */
     private Page simplePageQueryByStart(String sql, RowMapper<T> rowMapper, Map<String,?> args, long pageNo, long pageSize) {
         // 查询总数
-        String countSql = "select count(*) " + removeSelect(removeOrders(sql));
-        //？？？countSql中是count(*)，这里get("count(1)")，不对吧？？？
-        long count = (Long)this.jdbcTemplateReadOnly.queryForMap(countSql, args).get("count(1)");
-        if (count == 0) {
-            log.debug("no result...");
-            return new Page();
-        }
+        String countSql = "select count(1) " + removeSelect(removeOrders(sql));
         long start = (pageNo - 1) * pageSize;
-        sql = sql + " limit " + start + "," + pageSize;
         log.debug(javax.core.common.utils.StringUtils.format("[Execute SQL]sql:{0},params:{1}", sql, args));
-        List list = this.jdbcTemplateReadOnly.query(sql, rowMapper, args);
-        return new Page(start, count, (int)pageSize, list);
+        return pageQuery(getPageMode(), sql, countSql, rowMapper, new Object[] { args }, start, (int) pageSize);
     }
 
     /**
@@ -675,17 +1703,10 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @return
      */
     private Page simplePageQueryNotT(String sql, RowMapper rm, Map<String, ?> args, long pageNo, long pageSize) {
-        String countSql = "select count(*) " + removeSelect(removeOrders(sql));
-        long count = (Long)this.jdbcTemplateReadOnly().queryForMap(countSql, args).get("count(1)");
-        if (count == 0) {
-            log.debug("no result...");
-            return new Page();
-        }
+        String countSql = "select count(1) " + removeSelect(removeOrders(sql));
         long start = (pageNo - 1) * pageSize;
-        sql = sql + " limit " + start + "," + pageSize;
         log.debug(javax.core.common.utils.StringUtils.format("[Execute SQL]sql:{0},params:{1}",sql, args));
-        List list = this.jdbcTemplateReadOnly().query(sql, rm, args);
-        return new Page(start, count, (int)pageSize, list);
+        return pageQuery(getPageMode(), sql, countSql, rm, new Object[] { args }, start, (int) pageSize);
     }
 
     /**
@@ -814,59 +1835,395 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
         return ret > 0;
     }
 
-    private boolean doReplace(String tableName, Map<String, Object> params){
-        String sql = this.makeSimpleReplaceSql(tableName, params);
-        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
-        return ret > 0;
+    private boolean doReplace(String tableName, Map<String, Object> params){
+        String sql = this.makeSimpleReplaceSql(tableName, params);
+        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
+        return ret > 0;
+    }
+
+    private boolean doInsert(String tableName, Map<String, Object> params){
+        String sql = this.makeSimpleInsertSql(tableName, params);
+        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
+        return ret > 0;
+    }
+
+    //执行insert语句，返回true/false
+    private boolean doInsert(Map<String, Object> params) {
+        String sql = this.makeSimpleInsertSql(this.getTableName(), params);
+        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
+        return ret > 0;
+    }
+
+    //执行insert语句，并返回主键值
+    private Serializable doInsertRuturnKey(Map<String, Object> params) {
+        final List<Object> values = new ArrayList<>();
+        final String sql = makeSimpleInsertSql(getTableName(), params, values);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(getDataSourceWrite());
+        jdbcTemplate.update(new PreparedStatementCreator() {
+            @Override
+            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                for (int i = 0; i < values.size(); i++) {
+                    ps.setObject(i+1, values.get(i)==null?null:values.get(i));
+                }
+                return ps;
+            }
+        }, keyHolder);
+
+        return toKey(keyHolder);
+    }
+
+    //从KeyHolder中取出生成的主键值
+    private Serializable toKey(KeyHolder keyHolder) {
+        if (keyHolder == null) {return "";}
+        Map<String, Object> keys = keyHolder.getKeys();
+        if (keys == null || keys.size() == 0 || keys.values().size() == 0) {
+            return "";
+        }
+        Object key = keys.values().toArray()[0];
+        if (key == null || !(key instanceof Serializable)) {
+            return "";
+        }
+        if (key instanceof Number) {
+            Class clazz = key.getClass();
+            return (clazz == int.class || clazz == Integer.class) ? ((Number)key).intValue() : ((Number)key).longValue();
+        } else if (key instanceof String) {
+            return (String) key;
+        } else {
+            return (Serializable)key;
+        }
+    }
+
+    /**
+     * 更新实体对象：只更新row中非null且允许更新的列，返回更新记录数量
+     * @param pkValue
+     * @param row
+     * @return
+     */
+    private int doUpdate(Object pkValue, ParsedRow row) {
+        String sql = this.statementSql(StatementTextCache.Kind.UPDATE, row);
+        if (sql.isEmpty()) {
+            return 0;
+        }
+        return this.jdbcTemplateWrite().update(sql, rowSetter(row, true, pkValue));
+    }
+
+    //执行upsert语句：按方言生成，主键已存在时更新允许更新的列
+    private boolean doUpsert(ParsedRow row) {
+        String sql = this.statementSql(StatementTextCache.Kind.UPSERT, row);
+        if (sql.isEmpty()) {
+            return false;
+        }
+        return this.jdbcTemplateWrite().update(sql, rowSetter(row, false, null)) > 0;
+    }
+
+    private boolean doReplace(ParsedRow row) {
+        String sql = this.statementSql(StatementTextCache.Kind.REPLACE, row);
+        if (sql.isEmpty()) {
+            return false;
+        }
+        return this.jdbcTemplateWrite().update(sql, rowSetter(row, false, null)) > 0;
+    }
+
+    //执行insert语句：只插入row中非null且允许插入的列，返回true/false
+    private boolean doInsert(ParsedRow row) {
+        String sql = this.statementSql(StatementTextCache.Kind.INSERT, row);
+        if (sql.isEmpty()) {
+            return false;
+        }
+        return this.jdbcTemplateWrite().update(sql, rowSetter(row, false, null)) > 0;
+    }
+
+    //执行insert语句，并返回主键值
+    private Serializable doInsertRuturnKey(final ParsedRow row) {
+        final String sql = statementSql(StatementTextCache.Kind.INSERT, row);
+        if (sql.isEmpty()) {
+            return "";
+        }
+        final PreparedStatementSetter setter = rowSetter(row, false, null);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        this.jdbcTemplateWrite().update(new PreparedStatementCreator() {
+            @Override
+            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                setter.setValues(ps);
+                return ps;
+            }
+        }, keyHolder);
+        return toKey(keyHolder);
+    }
+
+    /**
+     * row的第i列是否写入数据库：值非null，且insert时允许插入；update时允许更新并且不是主键列
+     * @param row
+     * @param i
+     * @param update
+     * @return
+     */
+    private boolean isWritten(ParsedRow row, int i, boolean update) {
+        if (row.isNull(i)) {
+            return false;
+        }
+        PropertyMapping pm = op.columnMappings[i];
+        if (update) {
+            return pm.updatatable && !op.columns[i].equals(getPKColumn());
+        }
+        return pm.inserttable;
+    }
+
+    /**
+     * 按列顺序把row中要写入的值直接绑定到PreparedStatement，pkValue不为null时绑定在最后（update的where条件）
+     * @param row
+     * @param update
+     * @param pkValue
+     * @return
+     */
+    private PreparedStatementSetter rowSetter(final ParsedRow row, final boolean update, final Object pkValue) {
+        return new PreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps) throws SQLException {
+                bindRow(ps, row, update, pkValue);
+            }
+        };
+    }
+
+    //按列顺序绑定row中要写入的值，pkValue不为null时绑定在最后
+    private void bindRow(PreparedStatement ps, ParsedRow row, boolean update, Object pkValue) throws SQLException {
+        int index = 1;
+        for (int i = 0; i < row.size(); i++) {
+            if (isWritten(row, i, update)) {
+                StatementCreatorUtils.setParameterValue(ps, index++, SqlTypeValue.TYPE_UNKNOWN, row.values[i]);
+            }
+        }
+        if (pkValue != null) {
+            StatementCreatorUtils.setParameterValue(ps, index, SqlTypeValue.TYPE_UNKNOWN, pkValue);
+        }
+    }
+
+    //开启延迟写入时返回缓冲区，首次使用时创建
+    private WriteBehindBuffer writeBehind() {
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer == null) {
+            WriteBehindOptions options = getWriteBehindOptions();
+            if (options == null) {
+                return null;
+            }
+            if (isRoutingDataSource(getDataSourceWrite())) {
+                throw new IllegalStateException("write-behind can not write through routing data source "
+                        + getDataSourceWrite().getClass().getName() + ": the flush thread does not carry the caller's routing key");
+            }
+            synchronized (this) {
+                buffer = writeBehind;
+                if (buffer == null) {
+                    buffer = new WriteBehindBuffer(getTableName(), options, new WriteBehindBuffer.Flusher() {
+                        @Override
+                        public int flush(List<ParsedRow> inserts, List<ParsedRow> updates) {
+                            return flushRows(inserts, false) + flushRows(updates, true);
+                        }
+                    });
+                    writeBehind = buffer;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 延迟写入的刷出：按语句分组JDBC批处理执行，某组批处理失败时逐条重试，逐条仍失败的记录日志后丢弃
+     * @param rows
+     * @param update
+     * @return 失败的记录数
+     */
+    private int flushRows(List<ParsedRow> rows, final boolean update) {
+        final int pkIndex = op.columnIndex(getPKColumn());
+        Map<String, List<ParsedRow>> groups = new LinkedHashMap<>();
+        for (ParsedRow row : rows) {
+            String sql = statementSql(update ? StatementTextCache.Kind.UPDATE : StatementTextCache.Kind.INSERT, row);
+            if (sql.isEmpty()) {
+                continue;
+            }
+            List<ParsedRow> group = groups.get(sql);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(sql, group);
+            }
+            group.add(row);
+        }
+        int failed = 0;
+        for (Map.Entry<String, List<ParsedRow>> entry : groups.entrySet()) {
+            String sql = entry.getKey();
+            try {
+                jdbcTemplateWrite().batchUpdate(sql, entry.getValue(), getBatchSize(), new ParameterizedPreparedStatementSetter<ParsedRow>() {
+                    @Override
+                    public void setValues(PreparedStatement ps, ParsedRow row) throws SQLException {
+                        bindRow(ps, row, update, update ? row.values[pkIndex] : null);
+                    }
+                });
+            } catch (Exception e) {
+                log.warn("延迟写入批处理失败，逐条重试" + entry.getValue().size() + "条：" + e.getMessage());
+                for (ParsedRow row : entry.getValue()) {
+                    try {
+                        jdbcTemplateWrite().update(sql, rowSetter(row, update, update ? row.values[pkIndex] : null));
+                    } catch (Exception ex) {
+                        failed++;
+                        log.error("延迟写入失败，丢弃记录" + row + "：" + ex.getMessage());
+                    }
+                }
+            }
+        }
+        return failed;
     }
 
-    private boolean doInsert(String tableName, Map<String, Object> params){
-        String sql = this.makeSimpleInsertSql(tableName, params);
-        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
-        return ret > 0;
+    /**
+     * 取row对应的SQL：按(表名, 操作类型, 要写入的列)查缓存，没有时生成并放入缓存
+     * @param kind
+     * @param row
+     * @return 没有要写入的列时返回""
+     */
+    private String statementSql(StatementTextCache.Kind kind, ParsedRow row) {
+        String tableName = getTableName();
+        boolean update = kind == StatementTextCache.Kind.UPDATE;
+        StatementTextCache.Key key = statementCache.probe(tableName, kind, row.size());
+        for (int i = 0; i < row.size(); i++) {
+            if (isWritten(row, i, update)) {
+                key.set(i);
+            }
+        }
+        String sql = statementCache.get(key);
+        if (sql == null) {
+            if (key.isEmpty()) {
+                sql = "";
+            } else if (update) {
+                sql = makeSimpleUpdateSql(tableName, getPKColumn(), key);
+            } else if (kind == StatementTextCache.Kind.UPSERT) {
+                sql = makeUpsertSql(tableName, getPKColumn(), key);
+            } else {
+                sql = makeSimpleInsertSql(kind == StatementTextCache.Kind.REPLACE ? "replace into " : "insert into ",
+                        tableName, key);
+            }
+            sql = statementCache.put(key, sql);
+        }
+        return sql;
     }
 
-    //执行insert语句，返回true/false
-    private boolean doInsert(Map<String, Object> params) {
-        String sql = this.makeSimpleInsertSql(this.getTableName(), params);
-        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
-        return ret > 0;
+    /**
+     * 生成简单UPDATE语句：set key中标记的列，where条件是主键
+     * @param tableName
+     * @param pkName
+     * @param key
+     * @return
+     */
+    private String makeSimpleUpdateSql(String tableName, String pkName, StatementTextCache.Key key) {
+        StringBuilder sb = new StringBuilder(64 + op.columns.length * 16);
+        sb.append("update ").append(tableName).append(" set ");
+        boolean first = true;
+        for (int i = 0; i < op.columns.length; i++) {
+            if (!key.isSet(i)) {
+                continue;
+            }
+            if (!first) {
+                sb.append(",");
+            }
+            sb.append(op.columns[i]).append(" = ?");
+            first = false;
+        }
+        sb.append(" where ").append(pkName).append(" = ?");
+        return sb.toString();
     }
 
-    //执行insert语句，并返回主键值
-    private Serializable doInsertRuturnKey(Map<String, Object> params) {
-        final List<Object> values = new ArrayList<>();
-        final String sql = makeSimpleInsertSql(getTableName(), params, values);
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        final JdbcTemplate jdbcTemplate = new JdbcTemplate(getDataSourceWrite());
-        jdbcTemplate.update(new PreparedStatementCreator() {
-            @Override
-            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
-                PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-                for (int i = 0; i < values.size(); i++) {
-                    ps.setObject(i+1, values.get(i)==null?null:values.get(i));
-                }
-                return ps;
+    /**
+     * 生成upsert语句：插入key中标记的列，主键冲突时更新其中允许更新的非主键列
+     * MySQL：insert into ... on duplicate key update 列 = values(列)
+     * H2：标记的列都允许更新时用 merge into 表名 (列...) key (主键) values (...)，否则用 merge into ... using
+     * @param tableName
+     * @param pkName
+     * @param key
+     * @return
+     */
+    private String makeUpsertSql(String tableName, String pkName, StatementTextCache.Key key) {
+        StringBuilder sbUpdate = new StringBuilder(op.columns.length * 24);
+        boolean allUpdatable = true;
+        for (int i = 0; i < op.columns.length; i++) {
+            if (!key.isSet(i) || op.columns[i].equals(pkName)) {
+                continue;
+            }
+            if (!op.columnMappings[i].updatatable) {
+                allUpdatable = false;
+                continue;
+            }
+            if (sbUpdate.length() > 0) {
+                sbUpdate.append(",");
+            }
+            String column = op.columns[i];
+            if (getDialect() == Dialect.H2) {
+                sbUpdate.append(column).append(" = s.").append(column);
+            } else {
+                sbUpdate.append(column).append(" = values(").append(column).append(")");
             }
-        }, keyHolder);
-
-        if (keyHolder == null) {return "";}
-        Map<String, Object> keys = keyHolder.getKeys();
-        if (keys == null || keys.size() == 0 || keys.values().size() == 0) {
-            return "";
         }
-        Object key = keys.values().toArray()[0];
-        if (key == null || !(key instanceof Serializable)) {
-            return "";
+        if (getDialect() != Dialect.H2) {
+            if (sbUpdate.length() == 0) {
+                sbUpdate.append(pkName).append(" = ").append(pkName);
+            }
+            return makeSimpleInsertSql("insert into ", tableName, key) + " on duplicate key update " + sbUpdate;
         }
-        if (key instanceof Number) {
-            Class clazz = key.getClass();
-            return (clazz == int.class || clazz == Integer.class) ? ((Number)key).intValue() : ((Number)key).longValue();
-        } else if (key instanceof String) {
-            return (String) key;
-        } else {
-            return (Serializable)key;
+        if (allUpdatable) {
+            String insert = makeSimpleInsertSql("merge into ", tableName, key);
+            int values = insert.lastIndexOf(")VALUES(");
+            return insert.substring(0, values + 1) + " key(" + pkName + ")" + insert.substring(values + 1);
+        }
+        StringBuilder sbKey = new StringBuilder(op.columns.length * 16);
+        StringBuilder sbValue = new StringBuilder(op.columns.length * 3);
+        StringBuilder sbSource = new StringBuilder(op.columns.length * 18);
+        for (int i = 0; i < op.columns.length; i++) {
+            if (!key.isSet(i)) {
+                continue;
+            }
+            if (sbValue.length() > 0) {
+                sbKey.append(",");
+                sbValue.append(",");
+                sbSource.append(",");
+            }
+            sbKey.append(op.columns[i]);
+            sbValue.append("?");
+            sbSource.append("s.").append(op.columns[i]);
+        }
+        StringBuilder sb = new StringBuilder(64 + tableName.length() + sbKey.length() * 2 + sbSource.length() + sbUpdate.length());
+        sb.append("merge into ").append(tableName).append(" t using (values(").append(sbValue).append(")) s(")
+                .append(sbKey).append(") on t.").append(pkName).append(" = s.").append(pkName);
+        if (sbUpdate.length() > 0) {
+            sb.append(" when matched then update set ").append(sbUpdate);
+        }
+        sb.append(" when not matched then insert (").append(sbKey).append(") values (").append(sbSource).append(")");
+        return sb.toString();
+    }
+
+    /**
+     * 生成INSERT/REPLACE语句：只包含key中标记的列
+     * @param verb "insert into "或"replace into "
+     * @param tableName
+     * @param key
+     * @return
+     */
+    private String makeSimpleInsertSql(String verb, String tableName, StatementTextCache.Key key) {
+        StringBuilder sbKey = new StringBuilder(op.columns.length * 16);
+        StringBuilder sbValue = new StringBuilder(op.columns.length * 3);
+        for (int i = 0; i < op.columns.length; i++) {
+            if (!key.isSet(i)) {
+                continue;
+            }
+            if (sbValue.length() > 0) {
+                sbKey.append(",");
+                sbValue.append(",");
+            }
+            sbKey.append(op.columns[i]);
+            sbValue.append("?");
         }
+        return new StringBuilder(verb.length() + tableName.length() + sbKey.length() + sbValue.length() + 12)
+                .append(verb).append(tableName)
+                .append("(").append(sbKey).append(")VALUES(").append(sbValue).append(")")
+                .toString();
     }
 
     private String makeSimpleUpdateSql(Object pkValue, Map<String, Object> params) {
@@ -1130,26 +2487,90 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      */
     @Override
     public List<T> select(QueryRule queryRule) throws Exception {
-        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
-        String ws = removeFirstAnd(builder.getWhereSql());
-        String whereSql = ("".equals(ws) ? ws : (" where " + ws));
-        String sql = "select " + op.allColumn + " from " + getTableName() + whereSql;
-        Object[] values = builder.getValues();
-        String orderSql = builder.getOrderSql();
-        orderSql = (StringUtils.isEmpty(orderSql) ? " " : (" order by " + orderSql));
-        sql += orderSql;
+        QueryRulePlan plan = queryPlanCache.plan(queryRule);
+        String sql = "select " + op.allColumn + " from " + getTableName() + plan.whereSql + plan.orderSql;
+        Object[] values = plan.bind(queryRule);
         log.debug(sql);
-        return (List<T>) this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper, values);
+        return (List<T>) this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper(), values);
     }
 
 
 
-    //去掉最前面的and
-    private String removeFirstAnd(String sql) {
-        if (StringUtils.isEmpty(sql)) {return sql;}
-        return sql.trim().toLowerCase().replaceAll("^\\s*and","") + " ";
+    /**
+     * 游标查询满足条件的记录：结果按需逐行读取、映射，不全部放入内存。
+     * 返回的Stream占用一个读连接直到读完或关闭，必须在try-with-resources中使用；
+     * MySQL流式读取期间该连接不能执行其他语句
+     * @param queryRule 查询条件
+     * @return
+     * @throws Exception
+     */
+    public Stream<T> selectStream(QueryRule queryRule) throws Exception {
+        QueryRulePlan plan = queryPlanCache.plan(queryRule);
+        String sql = "select " + op.allColumn + " from " + getTableName() + plan.whereSql + plan.orderSql;
+        log.debug(sql);
+        return CursorStream.open(jdbcTemplateReadOnly(), sql, plan.bind(queryRule), op.rowMapper(), getStreamFetchSize());
+    }
+
+    /**
+     * 按主键顺序分块处理满足条件的记录，见forEachChunk(QueryRule, int, Object, Consumer)
+     * @param queryRule
+     * @param chunkSize
+     * @param consumer
+     * @return 最后处理的主键，没有记录时返回null
+     * @throws Exception
+     */
+    public PK forEachChunk(QueryRule queryRule, int chunkSize, Consumer<List<T>> consumer) throws Exception {
+        return forEachChunk(queryRule, chunkSize, null, consumer);
+    }
+
+    /**
+     * 按主键顺序分块处理满足条件的记录：每块一条独立的 select ... where 主键 > 上一块最后的主键 order by 主键 limit chunkSize，
+     * 查询之间不占用连接、不保持游标或快照，内存中只有当前一块。consumer中可以记下每块最后一个实体的主键，
+     * 中断后把它作为afterPk续跑
+     * @param queryRule 查询条件，排序被忽略
+     * @param chunkSize 每块的记录数
+     * @param afterPk 从大于该主键的记录开始，为null时从头开始
+     * @param consumer 处理一块记录
+     * @return 最后处理的主键，没有记录时返回afterPk
+     * @throws Exception
+     */
+    public PK forEachChunk(QueryRule queryRule, int chunkSize, PK afterPk, Consumer<List<T>> consumer) throws Exception {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        QueryRulePlan plan = queryPlanCache.plan(queryRule);
+        Object[] values = plan.bind(queryRule);
+        String pkColumn = getPKColumn();
+        PropertyMapping pk = op.mappings.get(pkColumn);
+        String select = "select " + op.allColumn + " from " + getTableName();
+        String tail = " order by " + pkColumn + " limit " + chunkSize;
+        String firstSql = select + plan.whereSql + tail;
+        String nextSql = select + whereAnd(plan.whereSql, pkColumn + " > ?") + tail;
+        PK last = afterPk;
+        while (true) {
+            List<T> chunk = last == null ? this.jdbcTemplateReadOnly().query(firstSql, op.rowMapper(), values)
+                    : this.jdbcTemplateReadOnly().query(nextSql, op.rowMapper(), append(values, last));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            last = (PK) pk.get(chunk.get(chunk.size() - 1));
+            consumer.accept(chunk);
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+        return last;
     }
 
+    /**
+     * 游标查询全部记录，用法同selectStream
+     * @return
+     * @throws Exception
+     */
+    public Stream<T> streamAll() throws Exception {
+        String sql = "select " + op.allColumn + " from " + getTableName();
+        return CursorStream.open(jdbcTemplateReadOnly(), sql, new Object[0], op.rowMapper(), getStreamFetchSize());
+    }
 
     /**
      * 结合查询条件、排序和分页信息生成SQL，并查询出分页数据
@@ -1161,23 +2582,416 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      */
     @Override
     public Page<T> select(QueryRule queryRule, final int pageNo, final int pageSize) throws Exception {
-        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
-        Object[] values = builder.getValues();
-        String ws = removeFirstAnd(builder.getWhereSql());
-        String whereSql = ("".equals(ws) ? ws : (" where " + ws));
-        String countSql = "select count(1) from " + getTableName() + whereSql;
-        long count = (Long) this.jdbcTemplateReadOnly().queryForMap(countSql, values).get("count(1)");
-        if (count == 0) {
+        return select(queryRule, pageNo, pageSize, getPageMode());
+    }
+
+    /**
+     * 结合查询条件、排序和分页信息生成SQL，按mode取得总记录数并查询出分页数据
+     * @param queryRule 查询条件
+     * @param pageNo 页码
+     * @param pageSize 每页条数
+     * @param mode 总记录数的取得方式
+     * @return
+     * @throws Exception
+     */
+    public Page<T> select(QueryRule queryRule, int pageNo, int pageSize, PageMode mode) throws Exception {
+        QueryRulePlan plan = queryPlanCache.plan(queryRule);
+        Object[] values = plan.bind(queryRule);
+        String countSql = "select count(1) from " + getTableName() + plan.whereSql;
+        String sql = "select " + op.allColumn + " from " + getTableName() + plan.whereSql + plan.orderSql;
+        return pageQuery(mode, sql, countSql, this.op.rowMapper(), values, (long) (pageNo - 1) * pageSize, pageSize);
+    }
+
+    /**
+     * 按mode分页查询：EXACT先count，总数为0时不再查询数据；EXACT_CONCURRENT同时执行count和数据查询；NO_COUNT和ESTIMATED多取一条判断是否有下一页
+     * @param mode
+     * @param sql 不含limit的查询语句
+     * @param countSql 计数语句
+     * @param rowMapper
+     * @param args sql和countSql的参数值
+     * @param start 本页第一条记录的位置
+     * @param pageSize
+     * @return
+     */
+    private <E> Page<E> pageQuery(PageMode mode, String sql, String countSql, RowMapper<E> rowMapper, Object[] args, long start, int pageSize) {
+        long estimate = -1;
+        if (mode == PageMode.ESTIMATED) {
+            estimate = estimateCount(sql, args);
+        }
+        if (mode == PageMode.EXACT_CONCURRENT) {
+            //调用方在事务中时数据查询看不到未提交的修改，还会在持有事务连接时再占一个连接；动态数据源在后台线程中没有路由设置
+            if (TransactionSynchronizationManager.isActualTransactionActive() || isRoutingDataSource(getDataSourceReadOnly())) {
+                mode = PageMode.EXACT;
+            } else {
+                Page<E> page = concurrentPageQuery(sql, countSql, rowMapper, args, start, pageSize);
+                if (page != null) {
+                    return page;
+                }
+                mode = PageMode.EXACT;
+            }
+        }
+        if (mode == PageMode.EXACT || (mode == PageMode.ESTIMATED && estimate < 0)) {
+            Long count = this.jdbcTemplateReadOnly().queryForObject(countSql, Long.class, args);
+            if (count == null || count == 0) {
+                log.debug("no result...");
+                return new Page<>();
+            }
+            String pageSql = sql + " limit " + start + "," + pageSize;
+            log.debug(pageSql);
+            return new Page<E>(start, count, pageSize, this.jdbcTemplateReadOnly().query(pageSql, rowMapper, args));
+        }
+        String pageSql = sql + " limit " + start + "," + (pageSize + 1);
+        log.debug(pageSql);
+        return probedPage(start, pageSize, this.jdbcTemplateReadOnly().query(pageSql, rowMapper, args), estimate);
+    }
+
+    /**
+     * 由多取一条的查询结果生成分页：多出的一条只用于判断是否有下一页。
+     * 没有下一页且本页有数据（或是第一页）时总数准确（EXACT）；否则总数为已知的下限 start + 本页条数 + 1，
+     * 有估算值时取估算值与下限中较大的（ESTIMATED），没有时为下限（UNKNOWN）
+     * @param start 本页第一条记录的位置
+     * @param pageSize
+     * @param rows limit start,pageSize+1 查询出的记录
+     * @param estimate 估算的总数，没有时为-1
+     * @return
+     */
+    static <E> Page<E> probedPage(long start, int pageSize, List<E> rows, long estimate) {
+        boolean hasNext = rows.size() > pageSize;
+        if (hasNext) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+        }
+        long known = start + rows.size() + (hasNext ? 1 : 0);
+        if (!hasNext && (!rows.isEmpty() || start == 0)) {
+            return new Page<E>(start, known, Page.TotalType.EXACT, pageSize, rows, false);
+        }
+        if (estimate >= 0) {
+            return new Page<E>(start, Math.max(estimate, known), Page.TotalType.ESTIMATED, pageSize, rows, hasNext);
+        }
+        return new Page<E>(start, known, Page.TotalType.UNKNOWN, pageSize, rows, hasNext);
+    }
+
+    /**
+     * count查询在当前线程执行，数据查询同时在PageQueryPool的线程中执行；count为0或失败时取消数据查询
+     * @param sql
+     * @param countSql
+     * @param rowMapper
+     * @param args
+     * @param start
+     * @param pageSize
+     * @return PageQueryPool没有空闲线程时返回null，由调用方顺序执行
+     */
+    private <E> Page<E> concurrentPageQuery(final String sql, String countSql, RowMapper<E> rowMapper, final Object[] args, long start, int pageSize) {
+        final String pageSql = sql + " limit " + start + "," + pageSize;
+        log.debug(pageSql);
+        //即将或正在执行的数据查询语句，用于取消
+        final AtomicReference<PreparedStatement> running = new AtomicReference<>();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final JdbcTemplate template = this.jdbcTemplateReadOnly();
+        final RowMapper<E> mapper = rowMapper;
+        Future<List<E>> data;
+        try {
+            data = PageQueryPool.EXECUTOR.submit(new Callable<List<E>>() {
+                @Override
+                public List<E> call() {
+                    try {
+                        return template.execute(new PreparedStatementCreator() {
+                            @Override
+                            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                                if (cancelled.get()) {
+                                    throw new SQLException(PAGE_QUERY_CANCELLED);
+                                }
+                                PreparedStatement ps = con.prepareStatement(pageSql);
+                                try {
+                                    for (int i = 0; i < args.length; i++) {
+                                        StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+                                    }
+                                } catch (SQLException e) {
+                                    JdbcUtils.closeStatement(ps);
+                                    throw e;
+                                }
+                                return ps;
+                            }
+                        }, new PreparedStatementCallback<List<E>>() {
+                            @Override
+                            public List<E> doInPreparedStatement(PreparedStatement ps) throws SQLException {
+                                //先登记语句再检查取消标志：cancel()没看到语句时这里一定能看到标志，语句不会执行；
+                                //看到语句时才调用Statement.cancel()（驱动对还没开始执行的语句会忽略cancel，读取结果时再检查一次）
+                                running.set(ps);
+                                if (cancelled.get()) {
+                                    throw new SQLException(PAGE_QUERY_CANCELLED);
+                                }
+                                ResultSet rs = ps.executeQuery();
+                                try {
+                                    List<E> rows = new ArrayList<>();
+                                    int rowNum = 0;
+                                    while (!cancelled.get() && rs.next()) {
+                                        rows.add(mapper.mapRow(rs, rowNum++));
+                                    }
+                                    return rows;
+                                } finally {
+                                    JdbcUtils.closeResultSet(rs);
+                                }
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        //已取消的查询没有人等待结果，取消引起的异常不再抛出
+                        if (cancelled.get()) {
+                            return Collections.emptyList();
+                        }
+                        throw e;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("page query pool is busy, count and data run sequentially");
+            return null;
+        }
+        Long count;
+        try {
+            count = template.queryForObject(countSql, Long.class, args);
+        } catch (RuntimeException e) {
+            cancel(data, running, cancelled);
+            throw e;
+        }
+        if (count == null || count == 0) {
+            cancel(data, running, cancelled);
+            log.debug("no result...");
             return new Page<>();
         }
-        long start = (pageNo - 1) * pageSize;
-        // 有数据的情况下，继续查询
-        String orderSql = builder.getOrderSql();
-        orderSql = (StringUtils.isEmpty(orderSql) ? " " : (" order by " + orderSql));
-        String sql = "select " + op.allColumn + " from " + getTableName() + whereSql + orderSql + " limit " + start + "," + pageSize;
-        List<T> list = (List<T>) this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper, values);
+        try {
+            return new Page<E>(start, count, pageSize, data.get());
+        } catch (InterruptedException e) {
+            cancel(data, running, cancelled);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("page query interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    //取消数据查询：已登记语句的调用Statement.cancel()，还没登记的在创建或执行语句前看到标志，不再执行
+    private void cancel(Future<?> data, AtomicReference<PreparedStatement> running, AtomicBoolean cancelled) {
+        cancelled.set(true);
+        data.cancel(false);
+        PreparedStatement ps = running.get();
+        if (ps != null) {
+            try {
+                ps.cancel();
+            } catch (SQLException e) {
+                log.debug("cancel page query failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final String PAGE_QUERY_CANCELLED = "page query cancelled";
+
+    //分页数据查询与count并行执行时使用的线程池，最多MAX_THREADS个线程且不排队，线程都在使用时提交被拒绝，改为顺序执行
+    private static final class PageQueryPool {
+        static final int MAX_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "page-query-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 用MySQL的EXPLAIN估算查询返回的行数：第一行的rows乘以filtered（MySQL 5.7以后才有）
+     * @param sql
+     * @param args
+     * @return 非MySQL或估算失败时返回-1
+     */
+    private long estimateCount(String sql, Object[] args) {
+        if (getDialect() != Dialect.MYSQL) {
+            return -1;
+        }
+        try {
+            List<Map<String, Object>> plan = this.jdbcTemplateReadOnly().queryForList("explain " + sql, args);
+            if (plan == null || plan.isEmpty()) {
+                return -1;
+            }
+            Object rows = plan.get(0).get("rows");
+            if (!(rows instanceof Number)) {
+                return -1;
+            }
+            double estimate = ((Number) rows).doubleValue();
+            Object filtered = plan.get(0).get("filtered");
+            if (filtered instanceof Number) {
+                estimate = estimate * ((Number) filtered).doubleValue() / 100;
+            }
+            return (long) estimate;
+        } catch (Exception e) {
+            log.warn("EXPLAIN估算行数失败，改为count查询：" + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 按排序键定位分页：以QueryRule的排序列加主键（不在排序列中时）为排序键，用上一页最后一条记录的排序键值生成
+     * (k1,k2,...) > (?,?,...) 条件（升降序混合或排序列可能为null时展开为or条件），直接定位到下一页，不扫描前面的记录。
+     * 排序列的值可以为null，按null最小排序（MySQL、H2的默认顺序，其他数据库显式加nulls first/last）。
+     * 其他数据库不使用limit，用maxRows限制每页读取的行数
+     * @param queryRule 查询条件和排序
+     * @param token 上一页返回的续传令牌，取第一页时为null
+     * @param pageSize 每页条数
+     * @return 当前页数据和下一页的续传令牌
+     * @throws Exception
+     */
+    @Override
+    public SeekPage<T> selectSeek(QueryRule queryRule, String token, int pageSize) throws Exception {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        QueryRulePlan plan = queryPlanCache.plan(queryRule);
+        Object[] values = plan.bind(queryRule);
+        //排序键：QueryRule中的排序列，最后加主键保证顺序唯一，主键的方向与最后一个排序列相同
+        List<String> keys = new ArrayList<>();
+        List<Boolean> descs = new ArrayList<>();
+        for (QueryRule.Rule rule : queryRule.getRuleList()) {
+            String name = rule.getPropertyName();
+            if ((rule.getType() == QueryRule.ASC_ORDER || rule.getType() == QueryRule.DESC_ORDER)
+                    && !StringUtils.isEmpty(name) && !keys.contains(name)) {
+                keys.add(name);
+                descs.add(rule.getType() == QueryRule.DESC_ORDER);
+            }
+        }
+        String pkColumn = getPKColumn();
+        if (!keys.contains(pkColumn)) {
+            descs.add(!descs.isEmpty() && descs.get(descs.size() - 1));
+            keys.add(pkColumn);
+        }
+        PropertyMapping[] mappings = new PropertyMapping[keys.size()];
+        boolean[] nullables = new boolean[keys.size()];
+        boolean generic = getDialect() == Dialect.GENERIC;
+        StringBuilder signature = new StringBuilder();
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            mappings[i] = op.mappings.get(keys.get(i));
+            if (mappings[i] == null) {
+                throw new IllegalArgumentException("order column " + keys.get(i) + " is not mapped.");
+            }
+            Class<?> type = mappings[i].getter.getReturnType();
+            if (!SeekToken.supports(type)) {
+                throw new IllegalArgumentException("order column " + keys.get(i) + " of type " + type.getName()
+                        + " can not be used for seek pagination");
+            }
+            nullables[i] = !type.isPrimitive() && !keys.get(i).equals(pkColumn);
+            String key = (i == 0 ? "" : ",") + keys.get(i) + (descs.get(i) ? " desc" : " asc");
+            signature.append(key);
+            order.append(key);
+            if (generic && nullables[i]) {
+                order.append(descs.get(i) ? " nulls last" : " nulls first");
+            }
+        }
+        String where = plan.whereSql;
+        Object[] args = values;
+        if (token != null) {
+            Object[] last = SeekToken.decode(signature.toString(), token, keys.size());
+            if (last[last.length - 1] == null) {
+                throw new IllegalArgumentException("invalid continuation token: " + token);
+            }
+            List<Object> seekArgs = new ArrayList<>();
+            where = whereAnd(plan.whereSql, seekCondition(keys, descs, nullables, last, seekArgs));
+            args = Arrays.copyOf(values, values.length + seekArgs.size());
+            for (int i = 0; i < seekArgs.size(); i++) {
+                args[values.length + i] = seekArgs.get(i);
+            }
+        }
+        //多取一条判断是否有下一页：MySQL、H2用limit，其他数据库的select不一定支持limit，用maxRows限制读取的行数
+        String sql = "select " + op.allColumn + " from " + getTableName() + where + " order by " + order;
+        JdbcTemplate template;
+        if (generic) {
+            template = new JdbcTemplate(getDataSourceReadOnly());
+            template.setMaxRows(pageSize + 1);
+        } else {
+            sql += " limit " + (pageSize + 1);
+            template = this.jdbcTemplateReadOnly();
+        }
         log.debug(sql);
-        return new Page<T>(start, count, pageSize, list);
+        List<T> rows = template.query(sql, op.rowMapper(), args);
+        String next = null;
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            T lastRow = rows.get(pageSize - 1);
+            Object[] lastKeys = new Object[mappings.length];
+            for (int i = 0; i < mappings.length; i++) {
+                lastKeys[i] = mappings[i].get(lastRow);
+            }
+            next = SeekToken.encode(signature.toString(), lastKeys);
+        }
+        return new SeekPage<T>(rows, next);
+    }
+
+    /**
+     * 排在last之后的条件：方向一致且各列不为null时为(k1,k2) > (?,?)或<，否则展开为 k1 > ? or (k1 = ? and k2 < ?) ...
+     * 可能为null的列按null最小处理：升序时null在前，降序时null在后
+     * @param keys 排序列
+     * @param descs 各列是否降序
+     * @param nullables 各列是否可能为null
+     * @param last 上一页最后一条记录的排序键值，可能为null的列可以为null
+     * @param args 输出条件的参数值
+     * @return
+     */
+    static String seekCondition(List<String> keys, List<Boolean> descs, boolean[] nullables, Object[] last, List<Object> args) {
+        boolean uniform = !descs.contains(!descs.get(0));
+        for (boolean nullable : nullables) {
+            uniform &= !nullable;
+        }
+        StringBuilder sb = new StringBuilder();
+        if (uniform) {
+            String cmp = descs.get(0) ? " < " : " > ";
+            if (keys.size() == 1) {
+                sb.append(keys.get(0)).append(cmp).append("?");
+            } else {
+                sb.append("(").append(StringUtils.join(keys.toArray(), ",")).append(")").append(cmp).append("(");
+                for (int i = 0; i < keys.size(); i++) {
+                    sb.append(i == 0 ? "?" : ",?");
+                }
+                sb.append(")");
+            }
+            args.addAll(Arrays.asList(last));
+            return sb.toString();
+        }
+        sb.append("(");
+        boolean first = true;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            //降序时没有排在null之后的值
+            if (descs.get(i) && last[i] == null) {
+                continue;
+            }
+            sb.append(first ? "(" : " or (");
+            first = false;
+            for (int j = 0; j < i; j++) {
+                if (last[j] == null) {
+                    sb.append(keys.get(j)).append(" is null and ");
+                } else {
+                    sb.append(keys.get(j)).append(" = ? and ");
+                    args.add(last[j]);
+                }
+            }
+            if (last[i] == null) {
+                sb.append(key).append(" is not null");
+            } else if (descs.get(i) && nullables[i]) {
+                sb.append("(").append(key).append(" < ? or ").append(key).append(" is null)");
+                args.add(last[i]);
+            } else {
+                sb.append(key).append(descs.get(i) ? " < ?" : " > ?");
+                args.add(last[i]);
+            }
+            sb.append(")");
+        }
+        return sb.append(")").toString();
     }
 
     /**
@@ -1226,15 +3040,8 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
     @Override
     public Page<Map<String, Object>> selectBySqlToPage(String sql, Object[] param, int pageNo, int pageSize) throws Exception {
         String countSql = "select count(1) from (" + sql + ") a";
-        long count = (Long) this.jdbcTemplateReadOnly().queryForMap(countSql, param).get("count(1)");
-        if (count == 0) {
-            return new Page<>();
-        }
-        long start = (pageNo - 1) * pageSize;
-        sql = sql + " limit " + start + "," + pageSize;
-        List<Map<String, Object>> list = this.jdbcTemplateReadOnly().queryForList(sql, param);
-        log.debug(sql);
-        return new Page<>(start, count, pageSize, list);
+        long start = (long) (pageNo - 1) * pageSize;
+        return pageQuery(getPageMode(), sql, countSql, new ColumnMapRowMapper(), param, start, pageSize);
     }
 
     /**
@@ -1248,16 +3055,8 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      */
     protected Page<Map<String, Object>> selectBySqlToPage(String sql, Map<String,?> param, final int pageNo, final int pageSize) throws Exception {
         String countSql = "select count(1) from (" + sql + ") a";
-        long count = (Long) this.jdbcTemplateReadOnly().queryForMap(countSql, param).get("count(1)");
-        if (count == 0) {
-            return new Page<>();
-        }
-        long start = (pageNo - 1) * pageSize;
-        //有数据的情况下，继续查询
-        sql = sql + " limit " + start + "," + pageSize;
-        List<Map<String, Object>> list = this.jdbcTemplateReadOnly().queryForList(sql, param);
-        log.debug(sql);
-        return new Page<>(start, count, pageSize, list);
+        long start = (long) (pageNo - 1) * pageSize;
+        return pageQuery(getPageMode(), sql, countSql, new ColumnMapRowMapper(), new Object[] { param }, start, pageSize);
     }
 
     @Override
@@ -0,0 +1,29 @@
+package com.orm.framework;
+
+import java.util.List;
+
+/**
+ * 列绑定计划：结果集列下标 -> 实体属性及其读取器（类型化读取器，或getObject加类型转换器）。
+ * 同一列结构（列名、列类型）的结果集共用一个计划，由EntityOperation按结构签名缓存。
+ */
+final class BindingPlan {
+    final String signature; //结果集结构签名
+    final int[] columnIndexes; //参与映射的列下标，从1开始
+    final PropertyMapping[] properties; //与columnIndexes一一对应的属性
+    final ColumnReader[] readers; //与columnIndexes一一对应的读取器
+
+    BindingPlan(String signature, List<Integer> columnIndexes, List<PropertyMapping> properties,
+                List<ColumnReader> readers) {
+        this.signature = signature;
+        this.columnIndexes = new int[columnIndexes.size()];
+        for (int i = 0; i < this.columnIndexes.length; i++) {
+            this.columnIndexes[i] = columnIndexes.get(i);
+        }
+        this.properties = properties.toArray(new PropertyMapping[properties.size()]);
+        this.readers = readers.toArray(new ColumnReader[readers.size()]);
+    }
+
+    int size() {
+        return columnIndexes.length;
+    }
+}
@@ -0,0 +1,60 @@
+package com.orm.framework;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 批量导入时传给BulkIngestStrategy的信息：写数据源的JdbcTemplate、表名、列，以及按列顺序取实体属性值的方法
+ */
+public final class BulkIngestContext<T> {
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityOperation<T> op;
+    private final String tableName;
+    private final String insertSql;
+    private final int batchSize;
+
+    BulkIngestContext(JdbcTemplate jdbcTemplate, EntityOperation<T> op, String tableName, String insertSql, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.op = op;
+        this.tableName = tableName;
+        this.insertSql = insertSql;
+        this.batchSize = batchSize;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * 全部列名，values返回的值按此顺序排列
+     * @return
+     */
+    public String[] getColumns() {
+        return op.columns.clone();
+    }
+
+    /**
+     * 包含全部列的单行insert语句，参数按getColumns()的顺序
+     * @return
+     */
+    public String getInsertSql() {
+        return insertSql;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 按getColumns()的顺序取实体的属性值，枚举取名称。
+     * 返回的数组在当前线程内复用，下一次调用时会被覆盖，不能保留
+     * @param entity
+     * @return
+     */
+    public Object[] values(T entity) {
+        return op.parseLocal(entity).values;
+    }
+}
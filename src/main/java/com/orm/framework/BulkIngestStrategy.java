@@ -0,0 +1,27 @@
+package com.orm.framework;
+
+import java.util.List;
+
+/**
+ * 批量导入方式（SPI）：BaseDaoSupport.ingest按顺序取第一个supports返回true的实现写入数据。
+ * Dao可重写getBulkIngestStrategies()调整候选实现及其适用的记录数
+ */
+public interface BulkIngestStrategy {
+
+    /**
+     * 是否适用于该数据库和记录数
+     * @param dialect
+     * @param rows 本次导入的记录数
+     * @return
+     */
+    boolean supports(Dialect dialect, int rows);
+
+    /**
+     * 导入rows中的全部记录
+     * @param context 表名、列、取值方法等
+     * @param rows
+     * @return 导入的记录数
+     * @throws Exception
+     */
+    <T> int ingest(BulkIngestContext<T> context, List<T> rows) throws Exception;
+}
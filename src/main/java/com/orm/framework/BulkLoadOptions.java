@@ -0,0 +1,63 @@
+package com.orm.framework;
+
+/**
+ * 并行批量导入的参数
+ */
+public class BulkLoadOptions {
+    private int parallelism = 4; //并行写入的线程数，即同时占用的连接数
+    private int partitionSize = 50000; //每个分区的记录数，每个分区一个事务
+    private boolean orderedCommit = false; //是否按分区顺序提交
+
+    public static BulkLoadOptions defaults() {
+        return new BulkLoadOptions();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 并行写入的线程数，不应超过写数据源连接池的大小
+     * @param parallelism
+     * @return
+     */
+    public BulkLoadOptions parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getPartitionSize() {
+        return partitionSize;
+    }
+
+    /**
+     * 每个分区的记录数
+     * @param partitionSize
+     * @return
+     */
+    public BulkLoadOptions partitionSize(int partitionSize) {
+        if (partitionSize < 1) {
+            throw new IllegalArgumentException("partitionSize must be positive: " + partitionSize);
+        }
+        this.partitionSize = partitionSize;
+        return this;
+    }
+
+    public boolean isOrderedCommit() {
+        return orderedCommit;
+    }
+
+    /**
+     * 按分区顺序提交：分区写完后等前一个分区提交再提交；某个分区失败后，后面的分区全部回滚，
+     * 数据库中保留的始终是输入数据的一个前缀
+     * @param orderedCommit
+     * @return
+     */
+    public BulkLoadOptions orderedCommit(boolean orderedCommit) {
+        this.orderedCommit = orderedCommit;
+        return this;
+    }
+}
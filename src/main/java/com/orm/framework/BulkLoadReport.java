@@ -0,0 +1,136 @@
+package com.orm.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 并行批量导入的结果：总体吞吐量和每个分区的执行情况
+ */
+public class BulkLoadReport {
+    private final List<PartitionResult> partitions;
+    private final long elapsedNanos;
+
+    BulkLoadReport(List<PartitionResult> partitions, long elapsedNanos) {
+        this.partitions = Collections.unmodifiableList(partitions);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * 已提交的记录数
+     * @return
+     */
+    public long getRows() {
+        long rows = 0;
+        for (PartitionResult p : partitions) {
+            if (p.isCommitted()) {
+                rows += p.getRows();
+            }
+        }
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * 吞吐量：已提交记录数 / 总耗时
+     * @return 每秒记录数
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getRows() * 1e9 / elapsedNanos;
+    }
+
+    public List<PartitionResult> getPartitions() {
+        return partitions;
+    }
+
+    public boolean isSuccess() {
+        return getFailures().isEmpty();
+    }
+
+    /**
+     * 失败（含因前面分区失败而回滚）的分区
+     * @return
+     */
+    public List<PartitionResult> getFailures() {
+        List<PartitionResult> failures = new ArrayList<>();
+        for (PartitionResult p : partitions) {
+            if (!p.isCommitted()) {
+                failures.add(p);
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkLoadReport{rows=" + getRows() + ", partitions=" + partitions.size()
+                + ", failures=" + getFailures().size() + ", elapsedMillis=" + getElapsedMillis()
+                + ", rowsPerSecond=" + (long) getRowsPerSecond() + "}";
+    }
+
+    /**
+     * 一个分区的执行结果
+     */
+    public static class PartitionResult {
+        private final int index;
+        private final long firstRow;
+        private final int rows;
+        private final long elapsedNanos;
+        private final boolean committed;
+        private final Throwable error;
+
+        PartitionResult(int index, long firstRow, int rows, long elapsedNanos, boolean committed, Throwable error) {
+            this.index = index;
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+            this.committed = committed;
+            this.error = error;
+        }
+
+        /**
+         * 分区序号，从0开始
+         * @return
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * 分区第一条记录在输入中的位置，从0开始
+         * @return
+         */
+        public long getFirstRow() {
+            return firstRow;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        /**
+         * 失败原因，成功时为null
+         * @return
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Partition{index=" + index + ", firstRow=" + firstRow + ", rows=" + rows
+                    + ", committed=" + committed + (error == null ? "" : ", error=" + error) + "}";
+        }
+    }
+}
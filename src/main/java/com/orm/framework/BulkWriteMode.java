@@ -0,0 +1,31 @@
+package com.orm.framework;
+
+/**
+ * insertAll/replaceAll的批量写入方式
+ */
+public enum BulkWriteMode {
+    /**
+     * 多行语句：每页拼成一条 insert into 表名 (列...) values (?...),(?...),...
+     */
+    MULTI_ROW,
+    /**
+     * JDBC批处理：一条 insert into 表名 (列...) values (?...) 语句，按批次addBatch/executeBatch，
+     * 连接串需开启rewriteBatchedStatements=true，由MySQL驱动改写为多行语句发送
+     */
+    JDBC_BATCH;
+
+    //通过启动参数 -Dorm.bulkWrite.mode=jdbc_batch 切换默认方式
+    public static final String MODE_PROPERTY = "orm.bulkWrite.mode";
+
+    /**
+     * 获取默认的批量写入方式，未配置时使用多行语句
+     * @return
+     */
+    public static BulkWriteMode defaultMode() {
+        String mode = System.getProperty(MODE_PROPERTY);
+        if (mode == null || mode.trim().length() == 0) {
+            return MULTI_ROW;
+        }
+        return valueOf(mode.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,149 @@
+package com.orm.framework;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 多行语句（insert/replace ... values (...),(...)、delete ... in (...)）的分块规划：
+ * 按属性类型和值估算每行编码后的字节数，按字节预算和服务端max_allowed_packet决定每块的行数，
+ * 再根据每块的实际执行耗时调整字节预算：超时则减半，明显低于目标耗时则放大。
+ */
+final class ChunkPlanner {
+    private static final int MAX_PARAMETERS = 65535; //MySQL单条语句占位符上限
+    private static final double MIN_SCALE = 1.0 / 64;
+    private static final double MAX_SCALE = 16;
+    private static final int ROW_OVERHEAD = 3; //"(" ")" ","
+
+    private final PropertyMapping[] columns;
+    private final int[] fixedSizes; //定长类型按类型估算的字节数，变长类型为-1
+    private final int fixedRowSize; //定长列之和
+    private final long targetBytes;
+    private final long targetNanos;
+    private final int maxRows;
+    private volatile long packetLimit = Long.MAX_VALUE;
+    private volatile double scale = 1;
+
+    /**
+     * @param columns 每行写入的列
+     * @param targetBytes 每块的目标字节数
+     * @param targetMillis 每块的目标执行耗时
+     * @param maxRows 每块最多行数
+     */
+    ChunkPlanner(PropertyMapping[] columns, long targetBytes, long targetMillis, int maxRows) {
+        this.columns = columns;
+        this.fixedSizes = new int[columns.length];
+        int fixed = ROW_OVERHEAD;
+        for (int i = 0; i < columns.length; i++) {
+            fixedSizes[i] = fixedSize(columns[i]);
+            if (fixedSizes[i] >= 0) {
+                fixed += fixedSizes[i] + 1;
+            }
+        }
+        this.fixedRowSize = fixed;
+        this.targetBytes = targetBytes;
+        this.targetNanos = targetMillis * 1000000L;
+        this.maxRows = Math.max(1, Math.min(maxRows, MAX_PARAMETERS / Math.max(1, columns.length)));
+    }
+
+    /**
+     * 设置服务端max_allowed_packet，留出两成余量给语句本身和协议开销
+     * @param maxAllowedPacket
+     */
+    void setPacketLimit(long maxAllowedPacket) {
+        this.packetLimit = maxAllowedPacket / 10 * 8;
+    }
+
+    //当前字节预算
+    long budget() {
+        return Math.min((long) (targetBytes * scale), packetLimit);
+    }
+
+    /**
+     * 从list的from下标开始，计算下一块的行数，至少1行
+     * @param list
+     * @param from
+     * @return
+     */
+    int nextChunk(List<?> list, int from) {
+        long budget = budget();
+        long bytes = 0;
+        int rows = 0;
+        int end = Math.min(list.size(), from + maxRows);
+        for (int i = from; i < end; i++) {
+            bytes += rowSize(list.get(i));
+            if (rows > 0 && bytes > budget) {
+                break;
+            }
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * 记录一块的执行情况并调整字节预算
+     * @param rows 本块行数
+     * @param nanos 执行耗时
+     * @param more 后面是否还有数据（最后一块通常不满，不据此放大预算）
+     */
+    void record(int rows, long nanos, boolean more) {
+        if (nanos > targetNanos) {
+            scale = Math.max(MIN_SCALE, scale / 2);
+        } else if (more && nanos < targetNanos / 4 && rows < maxRows) {
+            scale = Math.min(MAX_SCALE, scale * 1.25);
+        }
+    }
+
+    /**
+     * 估算一行编码后的字节数（文本协议，字符串按utf8最多3字节计）
+     * @param entity
+     * @return
+     */
+    long rowSize(Object entity) {
+        long size = fixedRowSize;
+        for (int i = 0; i < columns.length; i++) {
+            if (fixedSizes[i] < 0) {
+                size += valueSize(columns[i].get(entity)) + 1;
+            }
+        }
+        return size;
+    }
+
+    private static int fixedSize(PropertyMapping pm) {
+        if (pm.enumClass != null) {
+            return -1;
+        }
+        Class<?> type = pm.getter.getReturnType();
+        if (type == long.class || type == Long.class || type == int.class || type == Integer.class
+                || type == short.class || type == Short.class || type == byte.class || type == Byte.class) {
+            return 20;
+        } else if (type == double.class || type == Double.class || type == float.class || type == Float.class) {
+            return 24;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return 5;
+        } else if (Date.class.isAssignableFrom(type)) {
+            return 28;
+        }
+        return -1;
+    }
+
+    private static long valueSize(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof String) {
+            //引号、转义按两成余量估算
+            return ((String) value).length() * 3L * 6 / 5 + 2;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length * 2L + 3;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).precision() + 4;
+        }
+        if (value instanceof Number) {
+            return 24;
+        }
+        return String.valueOf(value).length() * 3L + 2;
+    }
+}
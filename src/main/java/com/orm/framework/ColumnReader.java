@@ -0,0 +1,418 @@
+package com.orm.framework;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 按属性类型从结果集取值并赋给实体属性：直接调用getLong/getInt/getDouble/getTimestamp等，用wasNull判断空值，
+ * 基本类型属性通过基本类型的setter函数对象赋值，不产生包装对象。
+ * 属性类型没有对应的类型化读取器时，使用getObject加列绑定计划中的转换器。
+ */
+abstract class ColumnReader {
+    final PropertyMapping property;
+
+    ColumnReader(PropertyMapping property) {
+        this.property = property;
+    }
+
+    /**
+     * 读取结果集第index列，非空时写入target的属性
+     * @param rs
+     * @param index 列下标，从1开始
+     * @param target
+     * @throws SQLException
+     */
+    abstract void read(ResultSet rs, int index, Object target) throws SQLException;
+
+    /**
+     * 该读取器能否读取指定SQL类型的列
+     * @param sqlType java.sql.Types
+     * @return
+     */
+    abstract boolean accepts(int sqlType);
+
+    /**
+     * 在EntityOperation构造时按属性类型选择类型化读取器，没有合适的返回null
+     * @param pm
+     * @return
+     */
+    static ColumnReader forProperty(PropertyMapping pm) {
+        Class<?> type = pm.setter.getParameterTypes()[0];
+        if (pm.enumClass != null) {
+            return new StringReader(pm);
+        }
+        if (type == long.class) {
+            ObjLongConsumer setter = LambdaAccessors.primitiveSetter(pm.setter, ObjLongConsumer.class, "accept");
+            return setter == null ? new LongReader(pm) : new PrimitiveLongReader(pm, setter);
+        } else if (type == int.class) {
+            ObjIntConsumer setter = LambdaAccessors.primitiveSetter(pm.setter, ObjIntConsumer.class, "accept");
+            return setter == null ? new IntReader(pm) : new PrimitiveIntReader(pm, setter);
+        } else if (type == double.class) {
+            ObjDoubleConsumer setter = LambdaAccessors.primitiveSetter(pm.setter, ObjDoubleConsumer.class, "accept");
+            return setter == null ? new DoubleReader(pm) : new PrimitiveDoubleReader(pm, setter);
+        } else if (type == float.class) {
+            ObjFloatConsumer setter = LambdaAccessors.primitiveSetter(pm.setter, ObjFloatConsumer.class, "accept");
+            return setter == null ? new FloatReader(pm) : new PrimitiveFloatReader(pm, setter);
+        } else if (type == short.class) {
+            ObjShortConsumer setter = LambdaAccessors.primitiveSetter(pm.setter, ObjShortConsumer.class, "accept");
+            return setter == null ? new ShortReader(pm) : new PrimitiveShortReader(pm, setter);
+        } else if (type == boolean.class) {
+            ObjBooleanConsumer setter = LambdaAccessors.primitiveSetter(pm.setter, ObjBooleanConsumer.class, "accept");
+            return setter == null ? new BooleanReader(pm) : new PrimitiveBooleanReader(pm, setter);
+        } else if (type == Long.class) {
+            return new LongReader(pm);
+        } else if (type == Integer.class) {
+            return new IntReader(pm);
+        } else if (type == Double.class) {
+            return new DoubleReader(pm);
+        } else if (type == Float.class) {
+            return new FloatReader(pm);
+        } else if (type == Short.class) {
+            return new ShortReader(pm);
+        } else if (type == Boolean.class) {
+            return new BooleanReader(pm);
+        } else if (type == String.class) {
+            return new StringReader(pm);
+        } else if (type == BigDecimal.class) {
+            return new BigDecimalReader(pm);
+        } else if (type == Timestamp.class || type == Date.class) {
+            return new TimestampReader(pm);
+        }
+        return null;
+    }
+
+    /**
+     * getObject读取，再经转换器转换为属性类型
+     * @param pm
+     * @param converter
+     * @return
+     */
+    static ColumnReader object(PropertyMapping pm, TypeConverters.Converter converter) {
+        return new ObjectReader(pm, converter);
+    }
+
+    //赋值失败时（如类型不匹配）沿用PropertyMapping.set的处理：打印后跳过该属性
+    void set(Object target, Object value) {
+        property.set(target, value);
+    }
+
+    static boolean isNumeric(int sqlType) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean isTemporal(int sqlType) {
+        return sqlType == Types.DATE || sqlType == Types.TIME || sqlType == Types.TIMESTAMP;
+    }
+
+    /**(目标对象, float值)**/
+    interface ObjFloatConsumer {
+        void accept(Object target, float value);
+    }
+
+    /**(目标对象, short值)**/
+    interface ObjShortConsumer {
+        void accept(Object target, short value);
+    }
+
+    /**(目标对象, boolean值)**/
+    interface ObjBooleanConsumer {
+        void accept(Object target, boolean value);
+    }
+
+    private abstract static class NumericReader extends ColumnReader {
+        NumericReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        boolean accepts(int sqlType) {
+            return isNumeric(sqlType);
+        }
+    }
+
+    private static class PrimitiveLongReader extends NumericReader {
+        private final ObjLongConsumer<Object> setter;
+
+        @SuppressWarnings("unchecked")
+        PrimitiveLongReader(PropertyMapping property, ObjLongConsumer setter) {
+            super(property);
+            this.setter = setter;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            long value = rs.getLong(index);
+            if (!rs.wasNull()) {
+                setter.accept(target, value);
+            }
+        }
+    }
+
+    private static class PrimitiveIntReader extends NumericReader {
+        private final ObjIntConsumer<Object> setter;
+
+        @SuppressWarnings("unchecked")
+        PrimitiveIntReader(PropertyMapping property, ObjIntConsumer setter) {
+            super(property);
+            this.setter = setter;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            int value = rs.getInt(index);
+            if (!rs.wasNull()) {
+                setter.accept(target, value);
+            }
+        }
+    }
+
+    private static class PrimitiveDoubleReader extends NumericReader {
+        private final ObjDoubleConsumer<Object> setter;
+
+        @SuppressWarnings("unchecked")
+        PrimitiveDoubleReader(PropertyMapping property, ObjDoubleConsumer setter) {
+            super(property);
+            this.setter = setter;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            double value = rs.getDouble(index);
+            if (!rs.wasNull()) {
+                setter.accept(target, value);
+            }
+        }
+    }
+
+    private static class PrimitiveFloatReader extends NumericReader {
+        private final ObjFloatConsumer setter;
+
+        PrimitiveFloatReader(PropertyMapping property, ObjFloatConsumer setter) {
+            super(property);
+            this.setter = setter;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            float value = rs.getFloat(index);
+            if (!rs.wasNull()) {
+                setter.accept(target, value);
+            }
+        }
+    }
+
+    private static class PrimitiveShortReader extends NumericReader {
+        private final ObjShortConsumer setter;
+
+        PrimitiveShortReader(PropertyMapping property, ObjShortConsumer setter) {
+            super(property);
+            this.setter = setter;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            short value = rs.getShort(index);
+            if (!rs.wasNull()) {
+                setter.accept(target, value);
+            }
+        }
+    }
+
+    private static class PrimitiveBooleanReader extends NumericReader {
+        private final ObjBooleanConsumer setter;
+
+        PrimitiveBooleanReader(PropertyMapping property, ObjBooleanConsumer setter) {
+            super(property);
+            this.setter = setter;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            boolean value = rs.getBoolean(index);
+            if (!rs.wasNull()) {
+                setter.accept(target, value);
+            }
+        }
+    }
+
+    private static class LongReader extends NumericReader {
+        LongReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            long value = rs.getLong(index);
+            if (!rs.wasNull()) {
+                set(target, value);
+            }
+        }
+    }
+
+    private static class IntReader extends NumericReader {
+        IntReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            int value = rs.getInt(index);
+            if (!rs.wasNull()) {
+                set(target, value);
+            }
+        }
+    }
+
+    private static class DoubleReader extends NumericReader {
+        DoubleReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            double value = rs.getDouble(index);
+            if (!rs.wasNull()) {
+                set(target, value);
+            }
+        }
+    }
+
+    private static class FloatReader extends NumericReader {
+        FloatReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            float value = rs.getFloat(index);
+            if (!rs.wasNull()) {
+                set(target, value);
+            }
+        }
+    }
+
+    private static class ShortReader extends NumericReader {
+        ShortReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            short value = rs.getShort(index);
+            if (!rs.wasNull()) {
+                set(target, value);
+            }
+        }
+    }
+
+    private static class BooleanReader extends NumericReader {
+        BooleanReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            boolean value = rs.getBoolean(index);
+            if (!rs.wasNull()) {
+                set(target, value);
+            }
+        }
+    }
+
+    private static class BigDecimalReader extends NumericReader {
+        BigDecimalReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            BigDecimal value = rs.getBigDecimal(index);
+            if (value != null) {
+                set(target, value);
+            }
+        }
+    }
+
+    private static class StringReader extends ColumnReader {
+        StringReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            String value = rs.getString(index);
+            if (value != null) {
+                set(target, value);
+            }
+        }
+
+        @Override
+        boolean accepts(int sqlType) {
+            return sqlType != Types.BLOB && sqlType != Types.BINARY && sqlType != Types.VARBINARY
+                    && sqlType != Types.LONGVARBINARY;
+        }
+    }
+
+    private static class TimestampReader extends ColumnReader {
+        TimestampReader(PropertyMapping property) {
+            super(property);
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            Timestamp value = rs.getTimestamp(index);
+            if (value != null) {
+                set(target, value);
+            }
+        }
+
+        @Override
+        boolean accepts(int sqlType) {
+            return isTemporal(sqlType);
+        }
+    }
+
+    private static class ObjectReader extends ColumnReader {
+        private final TypeConverters.Converter converter;
+
+        ObjectReader(PropertyMapping property, TypeConverters.Converter converter) {
+            super(property);
+            this.converter = converter;
+        }
+
+        @Override
+        void read(ResultSet rs, int index, Object target) throws SQLException {
+            Object value = rs.getObject(index);
+            if (value != null) {
+                set(target, converter.convert(value));
+            }
+        }
+
+        @Override
+        boolean accepts(int sqlType) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.orm.framework;
+
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 游标查询：结果集只向前读取，Stream每取一个元素读取并映射一行，不把全部结果放入内存。
+ * 连接、语句和结果集在读完最后一行或Stream.close()时释放；
+ * 游标（Spliterator）没有关闭就被回收时，由后台线程记录打开位置并释放资源。
+ * 只要Stream、它的iterator或spliterator还在使用，游标就可达，不会被提前释放
+ */
+final class CursorStream<T> extends Spliterators.AbstractSpliterator<T> {
+    private static final Logger log = Logger.getLogger(CursorStream.class);
+
+    //未关闭的游标，游标被回收时从这里找到对应的资源释放
+    private static final ReferenceQueue<Object> LEAKED = new ReferenceQueue<>();
+    private static final Set<CursorReference> OPEN = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<CursorReference, Boolean>()));
+    private static volatile Thread reaper;
+
+    private final JdbcTemplate jdbcTemplate; //用于转换SQLException
+    private final RowMapper<T> rowMapper;
+    private final Resources resources;
+    private int rowNum = 0;
+
+    private CursorStream(JdbcTemplate jdbcTemplate, String sql, RowMapper<T> rowMapper) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.jdbcTemplate = jdbcTemplate;
+        this.rowMapper = rowMapper;
+        this.resources = new Resources(jdbcTemplate.getDataSource(), sql);
+    }
+
+    /**
+     * 执行查询并返回按需读取结果集的Stream，使用完必须关闭（try-with-resources）
+     * @param jdbcTemplate 查询使用的数据源
+     * @param sql
+     * @param args
+     * @param rowMapper
+     * @param fetchSize 每次从服务端取的行数，MySQL传Integer.MIN_VALUE逐行流式读取
+     * @return
+     */
+    static <T> Stream<T> open(JdbcTemplate jdbcTemplate, String sql, Object[] args, RowMapper<T> rowMapper, int fetchSize) {
+        CursorStream<T> cursor = new CursorStream<T>(jdbcTemplate, sql, rowMapper);
+        try {
+            cursor.resources.execute(args, fetchSize);
+        } catch (SQLException e) {
+            cursor.resources.close();
+            throw jdbcTemplate.getExceptionTranslator().translate("selectStream", sql, e);
+        }
+        cursor.resources.reference = new CursorReference(cursor, cursor.resources);
+        OPEN.add(cursor.resources.reference);
+        startReaper();
+        return StreamSupport.stream(cursor, false).onClose(cursor.resources);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        T t;
+        //与close互斥，不会读到已关闭的结果集
+        synchronized (resources) {
+            if (resources.closed) {
+                return false;
+            }
+            try {
+                if (!resources.rs.next()) {
+                    //读完后立即释放连接，不必等到close
+                    resources.close();
+                    return false;
+                }
+                t = rowMapper.mapRow(resources.rs, rowNum++);
+            } catch (SQLException e) {
+                resources.close();
+                throw jdbcTemplate.getExceptionTranslator().translate("selectStream", resources.sql, e);
+            }
+        }
+        action.accept(t);
+        return true;
+    }
+
+    /**
+     * 当前未关闭的游标数
+     * @return
+     */
+    static int openCount() {
+        return OPEN.size();
+    }
+
+    //游标占用的连接、语句和结果集，不引用游标本身，游标回收后由后台线程关闭；Stream.close()时调用run()
+    private static final class Resources implements Runnable {
+        private final DataSource dataSource;
+        private final String sql;
+        private final Throwable openedAt;
+        private Connection con;
+        private PreparedStatement ps;
+        private ResultSet rs;
+        private boolean closed = false;
+        private CursorReference reference;
+
+        Resources(DataSource dataSource, String sql) {
+            this.dataSource = dataSource;
+            this.sql = sql;
+            this.openedAt = new Throwable("stream opened here");
+        }
+
+        void execute(Object[] args, int fetchSize) throws SQLException {
+            con = DataSourceUtils.getConnection(dataSource);
+            ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) {
+                StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+            }
+            rs = ps.executeQuery();
+        }
+
+        @Override
+        public void run() {
+            close();
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (reference != null) {
+                OPEN.remove(reference);
+                reference.clear();
+            }
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            if (con != null) {
+                DataSourceUtils.releaseConnection(con, dataSource);
+            }
+        }
+    }
+
+    //游标的虚引用，游标不可达时进入LEAKED队列；只引用资源，不影响游标的回收
+    private static final class CursorReference extends PhantomReference<Object> {
+        final Resources resources;
+
+        CursorReference(Object cursor, Resources resources) {
+            super(cursor, LEAKED);
+            this.resources = resources;
+        }
+    }
+
+    private static void startReaper() {
+        if (reaper != null) {
+            return;
+        }
+        synchronized (CursorStream.class) {
+            if (reaper != null) {
+                return;
+            }
+            Thread t = new Thread("cursor-stream-reaper") {
+                @Override
+                public void run() {
+                    while (true) {
+                        try {
+                            CursorReference ref = (CursorReference) LEAKED.remove();
+                            if (OPEN.remove(ref)) {
+                                log.error("selectStream返回的Stream没有关闭就被回收，释放连接：" + ref.resources.sql, ref.resources.openedAt);
+                                ref.resources.close();
+                            }
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Throwable e) {
+                            log.warn("释放未关闭的游标失败：" + e.getMessage());
+                        }
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+            reaper = t;
+        }
+    }
+}
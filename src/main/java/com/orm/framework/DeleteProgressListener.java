@@ -0,0 +1,15 @@
+package com.orm.framework;
+
+/**
+ * 分块删除（BaseDaoSupport.deleteBy）的进度回调，每删除一块调用一次
+ */
+public interface DeleteProgressListener {
+
+    /**
+     * @param chunk 块序号，从1开始
+     * @param deleted 本块删除的记录数
+     * @param total 累计删除的记录数
+     * @param elapsedMillis 从开始到现在的耗时
+     */
+    void progress(int chunk, int deleted, long total, long elapsedMillis);
+}
@@ -0,0 +1,37 @@
+package com.orm.framework;
+
+/**
+ * 数据库方言，决定save/saveAll使用的upsert语句
+ */
+public enum Dialect {
+    /**
+     * insert into 表名 (...) values (...) on duplicate key update 列 = values(列),...
+     */
+    MYSQL,
+    /**
+     * merge into 表名 ...
+     */
+    H2,
+    /**
+     * 不支持upsert：先按主键查询是否存在，再update或insert
+     */
+    GENERIC;
+
+    /**
+     * 根据DatabaseMetaData.getDatabaseProductName()判断方言
+     * @param productName
+     * @return
+     */
+    public static Dialect of(String productName) {
+        if (productName == null) {
+            return GENERIC;
+        }
+        String name = productName.toLowerCase();
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        } else if (name.contains("h2")) {
+            return H2;
+        }
+        return GENERIC;
+    }
+}
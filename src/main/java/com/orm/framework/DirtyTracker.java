@@ -0,0 +1,198 @@
+package com.orm.framework;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 脏检查：记录查询出的实体每列值的64位指纹，update时只写入发生变化的列。
+ * 整数、布尔、浮点数、日期时间、枚举按值原样存为long，不会误判；字符串、byte[]等其他类型存64位哈希。
+ * 按对象身份弱引用实体，实体被回收后快照随之清除；每个实体只保存一个long数组和一个null位图，不复制属性值。
+ */
+final class DirtyTracker {
+    //实体的快照：与EntityOperation.columns一一对应的值指纹，nullMask第i位为1表示第i列为null
+    private final class Snapshot {
+        final long[] fingerprints;
+        final long[] nullMask;
+
+        Snapshot(ParsedRow row) {
+            this.fingerprints = new long[row.size()];
+            this.nullMask = row.nullMask.clone();
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = fingerprint(i, row.values[i]);
+            }
+        }
+
+        boolean changed(ParsedRow row, int i) {
+            boolean wasNull = (nullMask[i >>> 6] & (1L << i)) != 0;
+            if (wasNull != row.isNull(i)) {
+                return true;
+            }
+            return !wasNull && fingerprints[i] != fingerprint(i, row.values[i]);
+        }
+    }
+
+    //按对象身份比较的弱引用键
+    private static final class IdentityKey extends WeakReference<Object> {
+        private final int hash;
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey) obj).get();
+        }
+    }
+
+    private final ConcurrentMap<IdentityKey, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final Class[] enumClasses; //与EntityOperation.columns一一对应，枚举属性的类型，其他为null
+
+    /**
+     * @param columns 与EntityOperation.columns一一对应的属性
+     */
+    DirtyTracker(PropertyMapping[] columns) {
+        this.enumClasses = new Class[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            enumClasses[i] = columns[i].enumClass;
+        }
+    }
+
+    /**
+     * 第i列值的指纹。同一列的值类型相同，按值能无损放入long的类型直接存值，其他类型取64位哈希。
+     * null是否变化由nullMask判断，指纹记为0
+     * @param i
+     * @param value
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private long fingerprint(int i, Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (enumClasses[i] != null) {
+            //解析结果中枚举属性是枚举名
+            return Enum.valueOf(enumClasses[i], (String) value).ordinal();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Double) {
+            return Double.doubleToLongBits((Double) value);
+        } else if (value instanceof Float) {
+            return Float.floatToIntBits((Float) value);
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        } else if (value instanceof Character) {
+            return (Character) value;
+        } else if (value instanceof Timestamp) {
+            //精确到纳秒
+            Timestamp t = (Timestamp) value;
+            return Math.floorDiv(t.getTime(), 1000) * 1000000000L + t.getNanos();
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof String) {
+            return hash64((String) value);
+        } else if (value instanceof byte[]) {
+            return hash64((byte[]) value);
+        }
+        return hash64(value.toString()) * 31 + value.hashCode();
+    }
+
+    //64位FNV-1a哈希，再做一次murmur3的finalizer混合
+    static long hash64(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h ^ s.length());
+    }
+
+    static long hash64(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(h ^ bytes.length);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 记录或刷新实体的快照
+     * @param entity
+     * @param row entity的解析结果
+     */
+    void snapshot(Object entity, ParsedRow row) {
+        expunge();
+        snapshots.put(new IdentityKey(entity, queue), new Snapshot(row));
+    }
+
+    /**
+     * 与快照相比值发生变化的列，按列下标升序
+     * @param entity
+     * @param row entity当前的解析结果
+     * @return 没有快照（不是查询出的实体或已forget）时返回null
+     */
+    int[] changedColumns(Object entity, ParsedRow row) {
+        Snapshot snapshot = snapshots.get(new IdentityKey(entity, null));
+        if (snapshot == null) {
+            return null;
+        }
+        int[] changed = new int[row.size()];
+        int n = 0;
+        for (int i = 0; i < row.size(); i++) {
+            if (snapshot.changed(row, i)) {
+                changed[n++] = i;
+            }
+        }
+        return Arrays.copyOf(changed, n);
+    }
+
+    void forget(Object entity) {
+        snapshots.remove(new IdentityKey(entity, null));
+    }
+
+    /**
+     * 当前保存快照的实体数
+     * @return
+     */
+    int size() {
+        expunge();
+        return snapshots.size();
+    }
+
+    //清除已被回收的实体的快照
+    private void expunge() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            snapshots.remove(ref);
+        }
+    }
+}
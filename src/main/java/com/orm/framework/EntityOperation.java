@@ -1,6 +1,5 @@
 package com.orm.framework;
 
-import javafx.scene.control.Tab;
 import org.apache.log4j.Logger;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.util.StringUtils;
@@ -12,9 +11,18 @@ import java.lang.reflect.Method;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 实体对象的反射操作
@@ -23,13 +31,31 @@ public class EntityOperation<T> {
     private Logger log = Logger.getLogger(EntityOperation.class);
     public Class<T> entityClass = null; //泛型实体Class对象
     public final Map<String, PropertyMapping> mappings; //Map》字段/属性名称：字段/属性信息
-    public final RowMapper<T> rowMapper; //实现RowMapper
+    private final RowMapperEngine engine; //rowMapper()的实现方式
     public final String tableName; //数据库表名
     public String allColumn = "*";
+    private final Supplier<T> constructor; //GENERATED方式使用的构造函数对象
     public Field pkField; //主键字段/属性
+    public final String[] columns; //按列名排序的全部列，parse(T, ParsedRow)按此顺序存放属性值
+    final PropertyMapping[] columnMappings; //与columns一一对应的属性
+    //当前线程可重复使用的解析结果
+    private final ThreadLocal<ParsedRow> localRow = new ThreadLocal<ParsedRow>() {
+        @Override
+        protected ParsedRow initialValue() {
+            return new ParsedRow(columns.length);
+        }
+    };
+    private final ConcurrentMap<String, BindingPlan> bindingPlans = new ConcurrentHashMap<>(); //Map》结果集结构签名：列绑定计划
+    private final AtomicLong planHits = new AtomicLong();
+    private final AtomicLong planMisses = new AtomicLong();
+    private volatile DirtyTracker dirtyTracker; //开启脏检查时记录rowMapper查询出的实体的快照
 
-    //初始化以上各属性
     public EntityOperation(Class<T> clazz, String pk)  throws Exception{
+        this(clazz, pk, RowMapperEngine.defaultEngine());
+    }
+
+    //初始化以上各属性，engine决定rowMapper的实现方式
+    public EntityOperation(Class<T> clazz, String pk, RowMapperEngine engine)  throws Exception{
         if (!clazz.isAnnotationPresent(Entity.class)) {
             throw new Exception("在" + clazz.getName() + "中没有找到Entity注解，不能做ORM映射");
         }
@@ -46,25 +72,42 @@ public class EntityOperation<T> {
         fillPKFieldAndAllColumn(pk,fields);
         this.mappings = getPropertyMappings(getters, setters, fields);
         this.allColumn = this.mappings.keySet().toString().replace("[","").replace("]","").replaceAll(" ","");
-        this.rowMapper = createRowMapper();
+        this.columns = this.mappings.keySet().toArray(new String[this.mappings.size()]);
+        Arrays.sort(this.columns);
+        this.columnMappings = new PropertyMapping[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++) {
+            this.columnMappings[i] = this.mappings.get(this.columns[i]);
+        }
+        this.engine = engine;
+        this.constructor = engine == RowMapperEngine.GENERATED ? LambdaAccessors.constructor(clazz) : null;
+    }
+
+    /**
+     * 实现RowMapper：将ResultSet对应的行记录，设置为Entity类的对应字段/属性值。
+     * 每次查询取一个新的RowMapper，映射第一行时解析列绑定计划，之后各行复用，计划随本次查询结束
+     * @return
+     */
+    public RowMapper<T> rowMapper() {
+        return engine == RowMapperEngine.GENERATED ? new GeneratedRowMapper<T>(this, constructor) : createRowMapper();
     }
 
-    //实现RowMapper：将ResultSet对应的行记录，设置为Entity类的对应字段/属性值。
     private RowMapper<T> createRowMapper() {
         return new RowMapper<T>() {
+            private BindingPlan plan; //本次查询结果集的列绑定计划
+
             @Override
             public T mapRow(ResultSet rs, int rowNum) throws SQLException {
                 try {
                     T t = entityClass.newInstance();
-                    ResultSetMetaData meta = rs.getMetaData();
-                    int columns = meta.getColumnCount();
-                    String columnName;
-                    for (int i = 0; i < columns; i++) {
-                        Object value = rs.getObject(i);
-                        columnName = meta.getColumnName(i);
-                        fillBeanFieldValue(t, columnName, value);
+                    if (plan == null) {
+                        plan = getBindingPlan(rs.getMetaData());
                     }
-                    return t;
+                    for (int i = 0; i < plan.size(); i++) {
+                        plan.readers[i].read(rs, plan.columnIndexes[i], t);
+                    }
+                    return mapped(t);
+                } catch (SQLException e) {
+                    throw e;
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
@@ -73,6 +116,63 @@ public class EntityOperation<T> {
         };
     }
 
+    /**
+     * 按结果集的结构签名获取列绑定计划，没有则生成并缓存
+     * @param meta
+     * @return
+     * @throws SQLException
+     */
+    BindingPlan getBindingPlan(ResultSetMetaData meta) throws SQLException {
+        int columns = meta.getColumnCount();
+        StringBuilder sb = new StringBuilder(columns * 16);
+        for (int i = 1; i <= columns; i++) {
+            sb.append(meta.getColumnLabel(i)).append(':').append(meta.getColumnType(i)).append(';');
+        }
+        String signature = sb.toString();
+        BindingPlan plan = bindingPlans.get(signature);
+        if (plan != null) {
+            planHits.incrementAndGet();
+            return plan;
+        }
+        planMisses.incrementAndGet();
+        List<Integer> indexes = new ArrayList<>(columns);
+        List<PropertyMapping> properties = new ArrayList<>(columns);
+        List<ColumnReader> readers = new ArrayList<>(columns);
+        for (int i = 1; i <= columns; i++) {
+            PropertyMapping pm = mappings.get(meta.getColumnLabel(i));
+            if (pm == null) {
+                continue;
+            }
+            indexes.add(i);
+            properties.add(pm);
+            //优先使用属性的类型化读取器，列类型不匹配时退化为getObject加转换器
+            ColumnReader reader = pm.reader;
+            if (reader == null || !reader.accepts(meta.getColumnType(i))) {
+                reader = ColumnReader.object(pm, TypeConverters.forColumn(pm.setter.getParameterTypes()[0], meta.getColumnClassName(i)));
+            }
+            readers.add(reader);
+        }
+        plan = new BindingPlan(signature, indexes, properties, readers);
+        BindingPlan existing = bindingPlans.putIfAbsent(signature, plan);
+        return existing == null ? plan : existing;
+    }
+
+    /**
+     * 列绑定计划缓存命中次数
+     * @return
+     */
+    public long getPlanHits() {
+        return planHits.get();
+    }
+
+    /**
+     * 列绑定计划缓存未命中（新生成计划）次数
+     * @return
+     */
+    public long getPlanMisses() {
+        return planMisses.get();
+    }
+
     //给字段/属性设值
     protected void fillBeanFieldValue(T t, String columnName, Object value) {
         if (value != null) {
@@ -143,7 +243,7 @@ public class EntityOperation<T> {
         Map<String, Object> _map = new TreeMap<>();
         try {
             for (String columnName : mappings.keySet()) {
-                Object value = mappings.get(columnName).getter.invoke(t);
+                Object value = mappings.get(columnName).get(t);
                 if (value == null)
                     continue;
                 _map.put(columnName, value);
@@ -153,9 +253,112 @@ public class EntityOperation<T> {
         }
         return _map;
     }
+
+    /**
+     * 按columns的顺序把属性值写入row，不创建Map
+     * @param t
+     * @param row 长度与columns一致
+     * @return row
+     */
+    ParsedRow parse(T t, ParsedRow row) {
+        for (int i = 0; i < columnMappings.length; i++) {
+            row.set(i, columnMappings[i].get(t));
+        }
+        return row;
+    }
+
+    /**
+     * 解析到当前线程复用的ParsedRow中，结果只在本次调用内有效，需要保留时使用ParsedRow.copy()
+     * @param t
+     * @return
+     */
+    ParsedRow parseLocal(T t) {
+        return parse(t, localRow.get());
+    }
+
+    /**
+     * 把source的全部列属性复制到target
+     * @param source
+     * @param target
+     * @param copyNull 是否复制null值
+     * @return 是否有属性值发生变化
+     */
+    boolean copy(T source, T target, boolean copyNull) {
+        boolean changed = false;
+        for (PropertyMapping pm : columnMappings) {
+            changed |= pm.copy(source, target, copyNull);
+        }
+        return changed;
+    }
+
+    /**
+     * 开启或关闭脏检查，关闭时清除全部快照
+     * @param enabled
+     */
+    void setDirtyTracking(boolean enabled) {
+        dirtyTracker = enabled ? new DirtyTracker(columnMappings) : null;
+    }
+
+    /**
+     * rowMapper映射完一行后调用，开启脏检查时记录实体的快照
+     * @param t
+     * @return t
+     */
+    T mapped(T t) {
+        DirtyTracker tracker = dirtyTracker;
+        if (tracker != null) {
+            tracker.snapshot(t, parseLocal(t));
+        }
+        return t;
+    }
+
+    /**
+     * 与查询时相比值发生变化的列下标
+     * @param t
+     * @param row t当前的解析结果
+     * @return 未开启脏检查或t没有快照时返回null
+     */
+    int[] changedColumns(T t, ParsedRow row) {
+        DirtyTracker tracker = dirtyTracker;
+        return tracker == null ? null : tracker.changedColumns(t, row);
+    }
+
+    /**
+     * 写入成功后刷新快照
+     * @param t
+     * @param row
+     */
+    void snapshot(T t, ParsedRow row) {
+        DirtyTracker tracker = dirtyTracker;
+        if (tracker != null) {
+            tracker.snapshot(t, row);
+        }
+    }
+
+    void forget(T t) {
+        DirtyTracker tracker = dirtyTracker;
+        if (tracker != null) {
+            tracker.forget(t);
+        }
+    }
+
+    int getTrackedCount() {
+        DirtyTracker tracker = dirtyTracker;
+        return tracker == null ? 0 : tracker.size();
+    }
+
+    /**
+     * 列在columns中的下标，不存在返回负数
+     * @param column
+     * @return
+     */
+    int columnIndex(String column) {
+        return column == null ? -1 : Arrays.binarySearch(columns, column);
+    }
+
 }
 
-/**entity字段的各种信息：是否允许执行插入、是否允许执行更新、对应数据库列名、是不是主键id，对应的getter和setter、字段名/属性名。 ？？？enumClass？？？**/
+/**entity字段的各种信息：是否允许执行插入、是否允许执行更新、对应数据库列名、是不是主键id，对应的getter和setter、字段名/属性名。enumClass：枚举类型的属性，数据库中存枚举名**/
 class PropertyMapping {
     final boolean inserttable;
     final boolean updatatable;
@@ -165,6 +368,9 @@ class PropertyMapping {
     final Method setter;
     final Class enumClass;
     final String fieldName;
+    final Function<Object, Object> getterFunction; //getter的函数对象，代替getter.invoke
+    final BiConsumer<Object, Object> setterFunction; //setter的函数对象，代替setter.invoke
+    final ColumnReader reader; //按属性类型选定的结果集读取器，没有合适的为null
 
     public PropertyMapping(Method getter, Method setter, Field field) {
         this.getter = getter;
@@ -176,21 +382,44 @@ class PropertyMapping {
         this.columnName = column == null ? ClassMappings.getGetterName(getter) : ("".equals(column.name()) ? ClassMappings.getGetterName(getter) : column.name());
         this.id = field.isAnnotationPresent(Id.class);
         this.fieldName = field.getName();
+        this.getterFunction = LambdaAccessors.getter(getter);
+        this.setterFunction = LambdaAccessors.setter(setter);
+        this.reader = ColumnReader.forProperty(this);
+    }
+
+    /**
+     * 把source的属性值复制到target，直接使用getter/setter函数对象
+     * @param source
+     * @param target
+     * @param copyNull 是否复制null值，基本类型属性不复制null
+     * @return target的属性值是否发生变化
+     */
+    boolean copy(Object source, Object target, boolean copyNull) {
+        Object value = getterFunction.apply(source);
+        if (value == null && (!copyNull || getter.getReturnType().isPrimitive())) {
+            return false;
+        }
+        Object old = getterFunction.apply(target);
+        if (value == null ? old == null : value.equals(old)) {
+            return false;
+        }
+        setterFunction.accept(target, value);
+        return true;
     }
 
-    //？？？什么意思？？？
-    Object get(Object target) throws Exception {
-        Object r = getter.invoke(target);
-        return enumClass == null ? r : Enum.valueOf(enumClass, (String) r);
+    //取属性值，枚举取其名称写入数据库
+    Object get(Object target) {
+        Object r = getterFunction.apply(target);
+        return enumClass == null || r == null ? r : ((Enum) r).name();
     }
 
-    void set(Object target, Object value) throws Exception {
+    void set(Object target, Object value) {
         if (enumClass != null && value != null) {
             value = Enum.valueOf(enumClass, (String) value);
         }
         try {
             if (value != null) {
-                setter.invoke(target, setter.getParameterTypes()[0].cast(value));
+                setterFunction.accept(target, value);
             }
         } catch (Exception e) {
             e.printStackTrace();
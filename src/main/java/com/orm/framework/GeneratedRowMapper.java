@@ -0,0 +1,35 @@
+package com.orm.framework;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * 生成式RowMapper：构造时为实体类绑定好构造函数的函数对象，属性赋值使用PropertyMapping上绑定的setter函数对象，
+ * 列下标与属性的对应关系取自EntityOperation缓存的列绑定计划，逐行按下标取值、赋值，不再走反射。
+ * 每次查询使用一个实例，第一行时取得计划，之后各行复用。
+ */
+class GeneratedRowMapper<T> implements RowMapper<T> {
+    private final EntityOperation<T> op;
+    private final Supplier<T> constructor;
+    private BindingPlan plan; //本次查询结果集的列绑定计划
+
+    GeneratedRowMapper(EntityOperation<T> op, Supplier<T> constructor) {
+        this.op = op;
+        this.constructor = constructor;
+    }
+
+    @Override
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (plan == null) {
+            plan = op.getBindingPlan(rs.getMetaData());
+        }
+        T t = constructor.get();
+        for (int i = 0; i < plan.size(); i++) {
+            plan.readers[i].read(rs, plan.columnIndexes[i], t);
+        }
+        return op.mapped(t);
+    }
+}
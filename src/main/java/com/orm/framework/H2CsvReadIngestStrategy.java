@@ -0,0 +1,97 @@
+package com.orm.framework;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * H2导入方式：实体写入临时CSV文件，再 insert into 表名 (列...) select * from csvread(文件)，导入后删除临时文件。
+ * 主要用于在本地H2数据库上验证批量导入
+ */
+public class H2CsvReadIngestStrategy implements BulkIngestStrategy {
+    private final int minRows;
+
+    /**
+     * @param minRows 记录数不少于minRows时使用
+     */
+    public H2CsvReadIngestStrategy(int minRows) {
+        this.minRows = minRows;
+    }
+
+    @Override
+    public boolean supports(Dialect dialect, int rows) {
+        return dialect == Dialect.H2 && rows >= minRows;
+    }
+
+    @Override
+    public <T> int ingest(BulkIngestContext<T> context, List<T> rows) throws IOException {
+        String[] columns = context.getColumns();
+        File file = File.createTempFile("bulk-ingest-", ".csv");
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+            try {
+                //第一行为列名
+                writer.write(StringUtils.join(columns, ","));
+                writer.write('\n');
+                for (T entity : rows) {
+                    Object[] values = context.values(entity);
+                    for (int i = 0; i < values.length; i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        writeValue(writer, values[i]);
+                    }
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            String sql = "insert into " + context.getTableName() + " (" + StringUtils.join(columns, ",")
+                    + ") select * from csvread(?, null, 'charset=UTF-8 fieldSeparator=,')";
+            return context.getJdbcTemplate().update(sql, file.getAbsolutePath());
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    //null写为不带引号的空字段（csvread读为NULL），其他值都加双引号，值中的双引号写两次；
+    //byte[]写为十六进制字符串，H2把字符串转换为BINARY类型时按十六进制解析
+    static void writeValue(Writer writer, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String s;
+        if (value instanceof byte[]) {
+            s = toHex((byte[]) value);
+        } else if (value instanceof Date && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time)
+                && !(value instanceof Timestamp)) {
+            s = new Timestamp(((Date) value).getTime()).toString();
+        } else {
+            s = value.toString();
+        }
+        writer.write('"');
+        writer.write(s.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = hex[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = hex[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
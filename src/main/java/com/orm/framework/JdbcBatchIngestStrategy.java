@@ -0,0 +1,46 @@
+package com.orm.framework;
+
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * 通用导入方式：单行insert语句JDBC批处理，适用于所有数据库
+ */
+public class JdbcBatchIngestStrategy implements BulkIngestStrategy {
+
+    @Override
+    public boolean supports(Dialect dialect, int rows) {
+        return true;
+    }
+
+    @Override
+    public <T> int ingest(final BulkIngestContext<T> context, List<T> rows) {
+        int[][] results = context.getJdbcTemplate().batchUpdate(context.getInsertSql(), rows, context.getBatchSize(),
+                new ParameterizedPreparedStatementSetter<T>() {
+                    @Override
+                    public void setValues(PreparedStatement ps, T entity) throws SQLException {
+                        Object[] values = context.values(entity);
+                        for (int i = 0; i < values.length; i++) {
+                            StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, values[i]);
+                        }
+                    }
+                });
+        int count = 0;
+        for (int[] batch : results) {
+            for (int n : batch) {
+                if (n >= 0) {
+                    count += n;
+                } else if (n == Statement.SUCCESS_NO_INFO) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
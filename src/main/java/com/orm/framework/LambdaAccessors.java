@@ -0,0 +1,167 @@
+package com.orm.framework;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 工具类：通过LambdaMetafactory把构造函数、getter、setter绑定成函数对象，调用时不再经过Method.invoke的参数数组和访问检查，
+ * JIT可以把函数对象内联到调用处。
+ * 绑定失败（如实体类不可见）时退化为MethodHandle调用。
+ */
+final class LambdaAccessors {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private LambdaAccessors() {
+    }
+
+    /**
+     * 绑定无参构造函数
+     * @param clazz
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> constructor(Class<T> clazz) {
+        final MethodHandle handle;
+        try {
+            handle = LOOKUP.findConstructor(clazz, MethodType.methodType(void.class));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(clazz.getName() + "没有可访问的无参构造函数", e);
+        }
+        try {
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(clazz));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            final MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+            return new Supplier<T>() {
+                @Override
+                public T get() {
+                    try {
+                        return (T) generic.invokeExact();
+                    } catch (Throwable t) {
+                        throw new IllegalStateException(t);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * 绑定getter：目标对象 -> 返回值（基本类型自动装箱）
+     * @param getter
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static Function<Object, Object> getter(Method getter) {
+        final MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(getter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(getter + "不可访问", e);
+        }
+        Class<?> returnType = wrap(getter.getReturnType());
+        try {
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(returnType, getter.getDeclaringClass()));
+            return (Function<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            final MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object target) {
+                    try {
+                        return generic.invokeExact(target);
+                    } catch (RuntimeException ex) {
+                        throw ex;
+                    } catch (Throwable t) {
+                        throw new IllegalStateException(t);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * 绑定setter：(目标对象, 参数值)
+     * @param setter
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static BiConsumer<Object, Object> setter(Method setter) {
+        final MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(setter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(setter + "不可访问", e);
+        }
+        Class<?> paramType = wrap(setter.getParameterTypes()[0]);
+        try {
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(void.class, setter.getDeclaringClass(), paramType));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            final MethodHandle generic = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return new BiConsumer<Object, Object>() {
+                @Override
+                public void accept(Object target, Object value) {
+                    try {
+                        generic.invokeExact(target, value);
+                    } catch (RuntimeException ex) {
+                        throw ex;
+                    } catch (Throwable t) {
+                        throw new IllegalStateException(t);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * 把基本类型参数的setter绑定成指定的函数式接口，如ObjLongConsumer：(目标对象, long值)，赋值时不经过包装类型。
+     * 绑定失败返回null，由调用方退化为装箱赋值。
+     * @param setter
+     * @param functionalInterface 函数式接口，唯一的抽象方法形如 void xxx(Object, 基本类型)
+     * @param methodName 函数式接口的方法名
+     * @param <F>
+     * @return
+     */
+    static <F> F primitiveSetter(Method setter, Class<F> functionalInterface, String methodName) {
+        Class<?> paramType = setter.getParameterTypes()[0];
+        try {
+            MethodHandle handle = LOOKUP.unreflect(setter);
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, methodName,
+                    MethodType.methodType(functionalInterface),
+                    MethodType.methodType(void.class, Object.class, paramType),
+                    handle,
+                    MethodType.methodType(void.class, setter.getDeclaringClass(), paramType));
+            return functionalInterface.cast(site.getTarget().invoke());
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    //基本类型转换为包装类型
+    static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
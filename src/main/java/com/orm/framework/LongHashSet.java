@@ -0,0 +1,127 @@
+package com.orm.framework;
+
+import java.util.Arrays;
+
+/**
+ * 基本类型long的哈希集合，开放寻址，不装箱。用于existsAllLong返回大量数字主键
+ */
+public final class LongHashSet {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private boolean hasZero; //0作为空槽标记，单独记录是否包含0
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * @param expected 预计的元素个数
+     */
+    public LongHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    //64位混合后取低位，避免连续主键集中在相邻槽位
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @param key
+     * @return 集合中原来没有key时返回true
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if (++size >= resizeAt) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 全部元素，升序
+     * @return
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int n = 0;
+        if (hasZero) {
+            result[n++] = 0;
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                result[n++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void rehash() {
+        long[] old = keys;
+        allocate(old.length << 1);
+        for (long key : old) {
+            if (key != 0) {
+                int i = slot(key, mask);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,33 @@
+package com.orm.framework;
+
+/**
+ * BaseDaoSupport.merge的结果：插入、更新、删除的记录数
+ */
+public class MergeResult {
+    private final int inserted;
+    private final int updated;
+    private final int deleted;
+
+    MergeResult(int inserted, int updated, int deleted) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.deleted = deleted;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    @Override
+    public String toString() {
+        return "MergeResult{inserted=" + inserted + ", updated=" + updated + ", deleted=" + deleted + "}";
+    }
+}
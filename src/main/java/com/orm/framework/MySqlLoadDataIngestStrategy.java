@@ -0,0 +1,200 @@
+package com.orm.framework;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * MySQL导入方式：LOAD DATA LOCAL INFILE，实体边读取边编码为制表符分隔的文本，通过InputStream交给驱动发送，不写临时文件。
+ * 需要驱动允许本地文件导入（Connector/J 8.0.15以后需在连接串中加allowLoadLocalInfile=true），
+ * 并且服务端local_infile=ON；使用Druid的wall过滤器时需放行LOAD DATA语句。
+ * 不在BaseDaoSupport的默认导入方式中，环境满足以上条件时由DAO重写getBulkIngestStrategies加入
+ */
+public class MySqlLoadDataIngestStrategy implements BulkIngestStrategy {
+    //驱动中提供setLocalInfileInputStream方法的Statement接口，依次为Connector/J 8和5.1
+    private static final String[] STATEMENT_CLASSES = { "com.mysql.cj.jdbc.JdbcStatement", "com.mysql.jdbc.Statement" };
+
+    private final int minRows;
+
+    /**
+     * @param minRows 记录数不少于minRows时使用
+     */
+    public MySqlLoadDataIngestStrategy(int minRows) {
+        this.minRows = minRows;
+    }
+
+    @Override
+    public boolean supports(Dialect dialect, int rows) {
+        return dialect == Dialect.MYSQL && rows >= minRows;
+    }
+
+    @Override
+    public <T> int ingest(final BulkIngestContext<T> context, final List<T> rows) {
+        final String sql = "load data local infile 'stream' into table " + context.getTableName()
+                + " character set utf8mb4 fields terminated by '\\t' escaped by '\\\\' lines terminated by '\\n' ("
+                + StringUtils.join(context.getColumns(), ",") + ")";
+        return context.getJdbcTemplate().execute(new ConnectionCallback<Integer>() {
+            @Override
+            public Integer doInConnection(Connection con) throws SQLException {
+                Statement stmt = con.createStatement();
+                try {
+                    setLocalInfileInputStream(stmt, new RowInputStream<T>(context, rows.iterator()));
+                    return stmt.executeUpdate(sql);
+                } finally {
+                    JdbcUtils.closeStatement(stmt);
+                }
+            }
+        });
+    }
+
+    //连接池包装的Statement先unwrap到驱动的Statement，再反射调用setLocalInfileInputStream
+    private static void setLocalInfileInputStream(Statement stmt, InputStream in) throws SQLException {
+        Object target = stmt;
+        for (String className : STATEMENT_CLASSES) {
+            try {
+                Class<?> clazz = Class.forName(className);
+                if (stmt.isWrapperFor(clazz)) {
+                    target = stmt.unwrap(clazz);
+                    break;
+                }
+            } catch (ClassNotFoundException e) {
+                //没有该版本的驱动，尝试下一个
+            }
+        }
+        try {
+            Method method = target.getClass().getMethod("setLocalInfileInputStream", InputStream.class);
+            method.invoke(target, in);
+        } catch (Exception e) {
+            throw new SQLException("statement " + target.getClass().getName() + " does not support setLocalInfileInputStream", e);
+        }
+    }
+
+    /**
+     * 把实体逐行编码为LOAD DATA默认格式：字段以\t分隔、行以\n结尾、null写作\N，\、\t、\n、\r、\0用\转义
+     */
+    static final class RowInputStream<T> extends InputStream {
+        private final BulkIngestContext<T> context;
+        private final Iterator<T> rows;
+        private byte[] buf = new byte[1024];
+        private int pos;
+        private int limit;
+
+        RowInputStream(BulkIngestContext<T> context, Iterator<T> rows) {
+            this.context = context;
+            this.rows = rows;
+        }
+
+        @Override
+        public int read() {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buf[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            while (n < len) {
+                if (pos == limit && !fill()) {
+                    break;
+                }
+                int count = Math.min(len - n, limit - pos);
+                System.arraycopy(buf, pos, b, off + n, count);
+                pos += count;
+                n += count;
+            }
+            return n == 0 ? -1 : n;
+        }
+
+        //编码下一行，没有更多数据时返回false
+        private boolean fill() {
+            if (!rows.hasNext()) {
+                return false;
+            }
+            pos = 0;
+            limit = 0;
+            Object[] values = context.values(rows.next());
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    put((byte) '\t');
+                }
+                writeValue(values[i]);
+            }
+            put((byte) '\n');
+            return true;
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                put((byte) '\\');
+                put((byte) 'N');
+            } else if (value instanceof byte[]) {
+                writeEscaped((byte[]) value);
+            } else if (value instanceof Boolean) {
+                put((byte) ((Boolean) value ? '1' : '0'));
+            } else if (value instanceof BigDecimal) {
+                writeEscaped(((BigDecimal) value).toPlainString().getBytes(StandardCharsets.UTF_8));
+            } else if (value instanceof Date && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time)
+                    && !(value instanceof Timestamp)) {
+                writeEscaped(new Timestamp(((Date) value).getTime()).toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                writeEscaped(value.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        //UTF-8多字节字符的各字节都不小于0x80，按字节转义不会破坏字符
+        private void writeEscaped(byte[] bytes) {
+            for (byte b : bytes) {
+                switch (b) {
+                    case '\\':
+                        put((byte) '\\');
+                        put((byte) '\\');
+                        break;
+                    case '\t':
+                        put((byte) '\\');
+                        put((byte) 't');
+                        break;
+                    case '\n':
+                        put((byte) '\\');
+                        put((byte) 'n');
+                        break;
+                    case '\r':
+                        put((byte) '\\');
+                        put((byte) 'r');
+                        break;
+                    case 0:
+                        put((byte) '\\');
+                        put((byte) '0');
+                        break;
+                    default:
+                        put(b);
+                }
+            }
+        }
+
+        private void put(byte b) {
+            if (limit == buf.length) {
+                byte[] bigger = new byte[buf.length << 1];
+                System.arraycopy(buf, 0, bigger, 0, limit);
+                buf = bigger;
+            }
+            buf[limit++] = b;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.orm.framework;
+
+/**
+ * 分页查询时总记录数的取得方式
+ */
+public enum PageMode {
+    /**
+     * 先执行count查询得到准确的总数，总数为0时不再查询数据
+     */
+    EXACT,
+    /**
+     * 与EXACT结果相同，但count查询和数据查询在两个读连接上同时执行，count为0时取消数据查询。
+     * 数据查询在有上限的后台线程池中执行；调用方在事务中、读数据源是动态数据源（AbstractRoutingDataSource）
+     * 或线程池没有空闲线程时，按EXACT顺序执行
+     */
+    EXACT_CONCURRENT,
+    /**
+     * 不查询总数，多取一条判断是否有下一页，总数为已知的下限（Page.TotalType.UNKNOWN）
+     */
+    NO_COUNT,
+    /**
+     * 不执行count，MySQL用EXPLAIN的估算行数作为总数（Page.TotalType.ESTIMATED），多取一条判断是否有下一页；
+     * 其他数据库或估算失败时按EXACT处理
+     */
+    ESTIMATED
+}
@@ -0,0 +1,259 @@
+package com.orm.framework;
+
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行分区批量导入：按partitionSize把输入切成分区，多个线程各自从写数据源取连接，
+ * 每个分区在一个事务中用JDBC批处理插入后提交，失败则回滚该分区。
+ * 输入按需读取，同时在内存中的分区最多为并行数的两倍。
+ */
+final class ParallelBulkLoader<T> {
+    private static final Logger log = Logger.getLogger(ParallelBulkLoader.class);
+    private static final AtomicInteger LOADER_ID = new AtomicInteger();
+
+    private final DataSource dataSource;
+    private final EntityOperation<T> op;
+    private final String sql; //全部列的单行insert语句
+    private final int batchSize;
+    private final BulkLoadOptions options;
+
+    //按顺序提交时，下一个可以提交的分区序号
+    private final Object commitLock = new Object();
+    private int nextCommit = 0;
+    private volatile boolean failed = false;
+
+    ParallelBulkLoader(DataSource dataSource, EntityOperation<T> op, String sql, int batchSize, BulkLoadOptions options) {
+        this.dataSource = dataSource;
+        this.op = op;
+        this.sql = sql;
+        this.batchSize = batchSize;
+        this.options = options;
+    }
+
+    /**
+     * 导入input中的全部记录。按顺序提交时，某个分区失败后不再读取后续输入
+     * @param input
+     * @return
+     */
+    BulkLoadReport load(Iterator<? extends T> input) {
+        long begin = System.nanoTime();
+        final int loaderId = LOADER_ID.incrementAndGet();
+        ExecutorService pool = Executors.newFixedThreadPool(options.getParallelism(), new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bulk-load-" + loaderId + "-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final Semaphore inFlight = new Semaphore(options.getParallelism() * 2);
+        List<Future<BulkLoadReport.PartitionResult>> futures = new ArrayList<>();
+        List<BulkLoadReport.PartitionResult> results = new ArrayList<>();
+        BulkLoadReport.PartitionResult dropped = null; //已读取但因中断没有提交写入的分区
+        int index = 0;
+        long firstRow = 0;
+        List<T> pending = null;
+        try {
+            while (input.hasNext() && !(options.isOrderedCommit() && failed)) {
+                final List<T> rows = new ArrayList<>(options.getPartitionSize());
+                while (rows.size() < options.getPartitionSize() && input.hasNext()) {
+                    rows.add(input.next());
+                }
+                pending = rows;
+                inFlight.acquire();
+                pending = null;
+                final int partition = index++;
+                final long first = firstRow;
+                firstRow += rows.size();
+                futures.add(pool.submit(new Callable<BulkLoadReport.PartitionResult>() {
+                    @Override
+                    public BulkLoadReport.PartitionResult call() {
+                        try {
+                            return write(partition, first, rows);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed = true;
+            if (pending != null) {
+                log.error("bulk load interrupted, partition " + index + " (rows " + firstRow + "-"
+                        + (firstRow + pending.size() - 1) + ") not written", e);
+                dropped = new BulkLoadReport.PartitionResult(index, firstRow, pending.size(), 0, false, e);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        //中断时仍等待已开始的分区结束，报告中包含每个已读取的分区
+        boolean interrupted = Thread.interrupted();
+        for (Future<BulkLoadReport.PartitionResult> future : futures) {
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    //write已捕获所有异常，不会走到这里
+                    log.error("bulk load partition failed", e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped != null) {
+            results.add(dropped);
+        }
+        BulkLoadReport report = new BulkLoadReport(results, System.nanoTime() - begin);
+        log.info(report);
+        return report;
+    }
+
+    /**
+     * 在一个事务中写入一个分区
+     * @param index
+     * @param firstRow
+     * @param rows
+     * @return
+     */
+    private BulkLoadReport.PartitionResult write(int index, long firstRow, List<T> rows) {
+        long begin = System.nanoTime();
+        Connection con = null;
+        Throwable error = null;
+        boolean committed = false;
+        try {
+            con = dataSource.getConnection();
+            con.setAutoCommit(false);
+            insert(con, rows);
+        } catch (Throwable e) {
+            error = e;
+        }
+        try {
+            if (options.isOrderedCommit()) {
+                awaitTurn(index);
+                if (error == null && failed) {
+                    error = new IllegalStateException("rolled back: an earlier partition failed");
+                }
+            }
+            if (error == null) {
+                con.commit();
+                committed = true;
+            }
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            if (!committed) {
+                rollback(con);
+            }
+            if (options.isOrderedCommit()) {
+                finishTurn(index, committed);
+            }
+            close(con);
+        }
+        if (error != null) {
+            log.error("bulk load partition " + index + " (rows " + firstRow + "-" + (firstRow + rows.size() - 1) + ") failed", error);
+        }
+        return new BulkLoadReport.PartitionResult(index, firstRow, rows.size(), System.nanoTime() - begin, committed, error);
+    }
+
+    private void insert(Connection con, List<T> rows) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        try {
+            int pending = 0;
+            for (T entity : rows) {
+                ParsedRow row = op.parseLocal(entity);
+                for (int i = 0; i < row.size(); i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, row.values[i]);
+                }
+                ps.addBatch();
+                if (++pending == batchSize) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        } finally {
+            JdbcUtils.closeStatement(ps);
+        }
+    }
+
+    //等待前面的分区都已提交或回滚
+    private void awaitTurn(int index) throws InterruptedException {
+        synchronized (commitLock) {
+            while (nextCommit != index) {
+                commitLock.wait();
+            }
+        }
+    }
+
+    private void finishTurn(int index, boolean committed) {
+        synchronized (commitLock) {
+            if (!committed) {
+                failed = true;
+            }
+            //写入阶段失败时可能还没等到自己的顺序，同样要等前面的分区结束后才能轮到下一个
+            while (nextCommit != index) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    //中断时仍需推进顺序，否则后面的分区会一直等待
+                    break;
+                }
+            }
+            nextCommit = index + 1;
+            commitLock.notifyAll();
+        }
+    }
+
+    private void rollback(Connection con) {
+        if (con == null) {
+            return;
+        }
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            log.warn("bulk load rollback failed: " + e.getMessage());
+        }
+    }
+
+    private void close(Connection con) {
+        if (con == null) {
+            return;
+        }
+        try {
+            con.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.warn("bulk load restore autoCommit failed: " + e.getMessage());
+        }
+        JdbcUtils.closeConnection(con);
+    }
+}
@@ -0,0 +1,50 @@
+package com.orm.framework;
+
+import java.util.Arrays;
+
+/**
+ * 实体解析结果：按EntityOperation.columns的固定列顺序存放属性值，nullMask按位记录值为null的列。
+ * 同一线程内可重复使用，写入数据库时不再为每个实体创建Map。
+ */
+final class ParsedRow {
+    final Object[] values; //与EntityOperation.columns一一对应的属性值
+    final long[] nullMask; //第i位为1表示第i列的值为null
+
+    ParsedRow(int columns) {
+        this.values = new Object[columns];
+        this.nullMask = new long[(columns + 63) >>> 6];
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    boolean isNull(int i) {
+        return (nullMask[i >>> 6] & (1L << i)) != 0;
+    }
+
+    void set(int i, Object value) {
+        values[i] = value;
+        if (value == null) {
+            nullMask[i >>> 6] |= 1L << i;
+        } else {
+            nullMask[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * 复制一份，用于需要在当前调用之外保留解析结果的场景
+     * @return
+     */
+    ParsedRow copy() {
+        ParsedRow row = new ParsedRow(values.length);
+        System.arraycopy(values, 0, row.values, 0, values.length);
+        System.arraycopy(nullMask, 0, row.nullMask, 0, nullMask.length);
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
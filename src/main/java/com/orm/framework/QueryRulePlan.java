@@ -0,0 +1,149 @@
+package com.orm.framework;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.orm.framework.QueryRule.Rule;
+
+/**
+ * 编译好的QueryRule查询计划：最终的where语句、order by语句，以及从QueryRule中取参数值的方法。
+ * 结构相同的QueryRule（规则类型、属性名、and/or、IN列表长度区间、空值情况相同）共用一个计划，
+ * 再次查询时只需按计划取出参数值，不再拼接、处理SQL。
+ */
+final class QueryRulePlan {
+    final String whereSql; //" where ..."，没有条件时为""
+    final String orderSql; //" order by ..."，没有排序时为" "
+    private final Binding[] bindings; //与SQL中的?一一对应
+
+    private QueryRulePlan(String whereSql, String orderSql, Binding[] bindings) {
+        this.whereSql = whereSql;
+        this.orderSql = orderSql;
+        this.bindings = bindings;
+    }
+
+    /**
+     * 按计划从queryRule中取出参数值
+     * @param queryRule 与编译时结构相同的查询规则
+     * @return
+     */
+    Object[] bind(QueryRule queryRule) {
+        Object[] values = new Object[bindings.length];
+        List<Rule> rules = queryRule.getRuleList();
+        for (int i = 0; i < bindings.length; i++) {
+            values[i] = bindings[i].value(rules);
+        }
+        return values;
+    }
+
+    int parameterCount() {
+        return bindings.length;
+    }
+
+    /**
+     * 编译查询计划：用占位对象代替template中的参数值交给QueryRuleSqlWriter拼装，
+     * 再根据拼出的参数值中占位对象的位置得到取值方法
+     * @param template 参数值已替换为Slot的查询规则
+     * @param slots template中的全部占位对象
+     * @return
+     */
+    static QueryRulePlan compile(QueryRule template, List<Slot> slots) {
+        QueryRuleSqlWriter writer = new QueryRuleSqlWriter(template);
+        String ws = writer.getWhereSql();
+        String whereSql = ("".equals(ws) ? ws : (" where " + ws + " "));
+        String orderSql = writer.getOrderSql();
+        orderSql = (StringUtils.isEmpty(orderSql) ? " " : (" order by " + orderSql));
+        Object[] values = writer.getValues();
+        Binding[] bindings = new Binding[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bindings[i] = binding(values[i], slots);
+        }
+        return new QueryRulePlan(whereSql, orderSql, bindings);
+    }
+
+    /**
+     * 不缓存时直接编译：参数值全部作为常量
+     * @param queryRule
+     * @return
+     */
+    static QueryRulePlan compile(QueryRule queryRule) {
+        return compile(queryRule, new ArrayList<Slot>(0));
+    }
+
+    private static Binding binding(Object value, List<Slot> slots) {
+        if (value instanceof Slot) {
+            return new Binding((Slot) value, null, null, null);
+        }
+        if (value instanceof String) {
+            //like的参数值是"%" + 值 + "%"，找到其中的占位符，记录前后缀
+            String s = (String) value;
+            for (Slot slot : slots) {
+                int pos = s.indexOf(slot.token);
+                if (pos >= 0) {
+                    return new Binding(slot, s.substring(0, pos), s.substring(pos + slot.token.length()), null);
+                }
+            }
+        }
+        return new Binding(null, null, null, value);
+    }
+
+    /**
+     * 参数值占位对象：记录该值在QueryRule中的位置（第几条规则、第几个值、是否是IN的List写法）
+     */
+    static final class Slot {
+        final int rule;
+        final int index;
+        final boolean listForm;
+        final String token;
+
+        Slot(int id, int rule, int index, boolean listForm) {
+            this.rule = rule;
+            this.index = index;
+            this.listForm = listForm;
+            this.token = "\u0001" + id + "\u0002";
+        }
+
+        @Override
+        public String toString() {
+            return token;
+        }
+    }
+
+    /**
+     * 一个?的取值方法：取slot位置上的值（有前后缀时拼成字符串），slot为null时是常量
+     */
+    private static final class Binding {
+        private final Slot slot;
+        private final String prefix;
+        private final String suffix;
+        private final Object constant;
+
+        Binding(Slot slot, String prefix, String suffix, Object constant) {
+            this.slot = slot;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.constant = constant;
+        }
+
+        Object value(List<Rule> rules) {
+            if (slot == null) {
+                return constant;
+            }
+            Object[] values = rules.get(slot.rule).getValues();
+            Object value;
+            if (slot.listForm) {
+                List<?> list = (List<?>) values[0];
+                //IN列表按长度区间补齐，超出实际长度的部分重复最后一个值
+                value = list.get(Math.min(slot.index, list.size() - 1));
+            } else {
+                value = values[Math.min(slot.index, values.length - 1)];
+            }
+            if (prefix != null) {
+                //like：与QueryRuleSqlWriter一致，*替换为%
+                return prefix + value.toString().replace('*', '%') + suffix;
+            }
+            return value;
+        }
+    }
+}
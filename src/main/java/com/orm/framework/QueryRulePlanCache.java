@@ -0,0 +1,191 @@
+package com.orm.framework;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.orm.framework.QueryRule.Rule;
+
+/**
+ * QueryRule查询计划缓存，按QueryRule的结构缓存编译好的QueryRulePlan。
+ * 结构包括：每条规则的类型、and/or、属性名、参数值是否为空；IN/NOT IN按列表长度区间（1、2、4、8...）归类，
+ * 编译时列表补齐到区间上限，查询时重复最后一个值。IN列表中含null时不走缓存。
+ */
+final class QueryRulePlanCache {
+    private final int maxEntries;
+    private final ConcurrentMap<String, QueryRulePlan> plans = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+
+    QueryRulePlanCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 取queryRule对应的查询计划，没有时编译并放入缓存
+     * @param queryRule
+     * @return
+     */
+    QueryRulePlan plan(QueryRule queryRule) {
+        String shape = shape(queryRule);
+        if (shape == null) {
+            bypasses.incrementAndGet();
+            return QueryRulePlan.compile(queryRule);
+        }
+        QueryRulePlan plan = plans.get(shape);
+        if (plan != null) {
+            hits.incrementAndGet();
+            return plan;
+        }
+        misses.incrementAndGet();
+        List<QueryRulePlan.Slot> slots = new ArrayList<>();
+        plan = QueryRulePlan.compile(template(queryRule, slots), slots);
+        if (plans.size() >= maxEntries) {
+            Iterator<String> it = plans.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        QueryRulePlan prev = plans.putIfAbsent(shape, plan);
+        return prev == null ? plan : prev;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getBypasses() {
+        return bypasses.get();
+    }
+
+    /**
+     * 命中率：命中次数 / 查询次数（含不走缓存的查询）
+     * @return
+     */
+    double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get() + bypasses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    int size() {
+        return plans.size();
+    }
+
+    /**
+     * 结构签名，不能缓存时返回null
+     * @param queryRule
+     * @return
+     */
+    static String shape(QueryRule queryRule) {
+        List<Rule> rules = queryRule.getRuleList();
+        StringBuilder sb = new StringBuilder(rules.size() * 24);
+        for (Rule rule : rules) {
+            String name = rule.getPropertyName();
+            sb.append(rule.getType()).append(',').append(rule.getAndOr()).append(',');
+            if (name == null) {
+                sb.append('-');
+            } else {
+                sb.append(name.length()).append(':').append(name);
+            }
+            sb.append(',');
+            Object[] values = rule.getValues();
+            if (values == null || values.length == 0) {
+                sb.append('e');
+            } else if (isIn(rule)) {
+                int size;
+                if (isListForm(values)) {
+                    List<?> list = (List<?>) values[0];
+                    if (list.contains(null)) {
+                        return null;
+                    }
+                    size = list.size();
+                    sb.append('L');
+                } else {
+                    for (Object value : values) {
+                        if (value == null) {
+                            return null;
+                        }
+                    }
+                    size = values.length;
+                    sb.append('A');
+                }
+                sb.append(size == 0 ? 0 : bucket(size));
+            } else {
+                for (Object value : values) {
+                    sb.append(value == null ? 'n' : 'v');
+                }
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 复制queryRule，参数值替换为占位对象，IN列表补齐到区间上限
+     * @param queryRule
+     * @param slots 输出参数，收集创建的占位对象
+     * @return
+     */
+    static QueryRule template(QueryRule queryRule, List<QueryRulePlan.Slot> slots) {
+        QueryRule template = new QueryRule(queryRule.getPropertyName());
+        List<Rule> rules = queryRule.getRuleList();
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            Object[] values = rule.getValues();
+            Object[] slotValues = values;
+            if (values != null && values.length > 0) {
+                if (isIn(rule) && isListForm(values)) {
+                    int size = ((List<?>) values[0]).size();
+                    List<Object> list = new ArrayList<>();
+                    for (int k = 0; size > 0 && k < bucket(size); k++) {
+                        list.add(slot(slots, i, k, true));
+                    }
+                    slotValues = new Object[]{ list };
+                } else if (isIn(rule)) {
+                    slotValues = new Object[bucket(values.length)];
+                    for (int k = 0; k < slotValues.length; k++) {
+                        slotValues[k] = slot(slots, i, k, false);
+                    }
+                } else {
+                    slotValues = new Object[values.length];
+                    for (int k = 0; k < values.length; k++) {
+                        slotValues[k] = values[k] == null ? null : slot(slots, i, k, false);
+                    }
+                }
+            }
+            template.getRuleList().add(template.new Rule(rule.getType(), rule.getPropertyName(), slotValues)
+                    .setAndOr(rule.getAndOr()));
+        }
+        return template;
+    }
+
+    private static QueryRulePlan.Slot slot(List<QueryRulePlan.Slot> slots, int rule, int index, boolean listForm) {
+        QueryRulePlan.Slot slot = new QueryRulePlan.Slot(slots.size(), rule, index, listForm);
+        slots.add(slot);
+        return slot;
+    }
+
+    private static boolean isIn(Rule rule) {
+        return rule.getType() == QueryRule.IN || rule.getType() == QueryRule.NOTIN;
+    }
+
+    //与QueryRuleSqlWriter一致：只有一个值且是List时按List写法处理
+    private static boolean isListForm(Object[] values) {
+        return values.length == 1 && values[0] instanceof List;
+    }
+
+    //不小于size的最小的2的幂
+    private static int bucket(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+}
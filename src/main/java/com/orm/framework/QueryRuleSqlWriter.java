@@ -0,0 +1,219 @@
+package com.orm.framework;
+
+import java.util.List;
+
+import com.orm.framework.QueryRule.Rule;
+
+/**
+ * SQL构造器（单次拼接版）：where条件和order by写入同一个预估好容量的StringBuilder，
+ * 参数值写入按个数预先分配的数组，不使用正则，也不生成中间的片段列表。
+ * 与QueryRuleSqlBuilder的区别：
+ * where语句开头不带and/or；between绑定两个参数；< 不再同时生成 <=；
+ * = null、<> null 生成 is null、is not null；is empty、is not empty 直接写 ''，不作为参数；
+ * IN列表中的null忽略；其他规则参数值为空时忽略该规则。
+ */
+public class QueryRuleSqlWriter {
+    private final Object[] values; //参数值，与where语句中的?一一对应
+    private final String whereSql; //不带where关键字
+    private final String orderSql; //不带order by关键字
+
+    public Object[] getValues() {
+        return values;
+    }
+
+    public String getWhereSql() {
+        return whereSql;
+    }
+
+    public String getOrderSql() {
+        return orderSql;
+    }
+
+    /**
+     * 创建SQL构造器
+     */
+    public QueryRuleSqlWriter(QueryRule queryRule) {
+        List<Rule> rules = queryRule.getRuleList();
+        int count = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            count += Math.max(0, arity(rules.get(i)));
+        }
+        this.values = new Object[count];
+        StringBuilder sb = new StringBuilder(rules.size() * 32);
+        int index = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            index = writeCondition(sb, rules.get(i), index);
+        }
+        int whereEnd = sb.length();
+        for (int i = 0; i < rules.size(); i++) {
+            writeOrder(sb, rules.get(i), whereEnd);
+        }
+        this.whereSql = sb.substring(0, whereEnd);
+        this.orderSql = sb.substring(whereEnd);
+    }
+
+    /**
+     * 规则绑定的参数个数，不生成条件时返回-1
+     * @param rule
+     * @return
+     */
+    private static int arity(Rule rule) {
+        Object[] vs = rule.getValues();
+        switch (rule.getType()) {
+            case QueryRule.ISNULL:
+            case QueryRule.ISNOTNULL:
+            case QueryRule.ISEMPTY:
+            case QueryRule.ISNOTEMPTY:
+                return 0;
+            case QueryRule.EQ:
+            case QueryRule.NOTEQ:
+                if (vs == null || vs.length == 0) {
+                    return -1;
+                }
+                return vs[0] == null ? 0 : 1;
+            case QueryRule.LIKE:
+            case QueryRule.GT:
+            case QueryRule.GE:
+            case QueryRule.LT:
+            case QueryRule.LE:
+                return vs == null || vs.length == 0 || vs[0] == null ? -1 : 1;
+            case QueryRule.BETWEEN:
+                return vs == null || vs.length < 2 || vs[0] == null || vs[1] == null ? -1 : 2;
+            case QueryRule.IN:
+            case QueryRule.NOTIN:
+                int n = 0;
+                if (vs != null && vs.length == 1 && vs[0] instanceof List) {
+                    for (Object v : (List<?>) vs[0]) {
+                        if (v != null) {
+                            n++;
+                        }
+                    }
+                } else if (vs != null) {
+                    for (Object v : vs) {
+                        if (v != null) {
+                            n++;
+                        }
+                    }
+                }
+                return n == 0 ? -1 : n;
+            case QueryRule.ASC_ORDER:
+            case QueryRule.DESC_ORDER:
+                return -1;
+            default:
+                throw new IllegalArgumentException("type " + rule.getType() + " not supported.");
+        }
+    }
+
+    /**
+     * 写入一条where条件及其参数值
+     * @param sb
+     * @param rule
+     * @param index 下一个参数值的下标
+     * @return 写入后下一个参数值的下标
+     */
+    private int writeCondition(StringBuilder sb, Rule rule, int index) {
+        int arity = arity(rule);
+        if (arity < 0) {
+            return index;
+        }
+        if (sb.length() > 0) {
+            sb.append(QueryRule.OR == rule.getAndOr() ? " or " : " and ");
+        }
+        sb.append(rule.getPropertyName());
+        Object[] vs = rule.getValues();
+        switch (rule.getType()) {
+            case QueryRule.EQ:
+                sb.append(arity == 0 ? " is null" : " = ?");
+                break;
+            case QueryRule.NOTEQ:
+                sb.append(arity == 0 ? " is not null" : " <> ?");
+                break;
+            case QueryRule.GT:
+                sb.append(" > ?");
+                break;
+            case QueryRule.GE:
+                sb.append(" >= ?");
+                break;
+            case QueryRule.LT:
+                sb.append(" < ?");
+                break;
+            case QueryRule.LE:
+                sb.append(" <= ?");
+                break;
+            case QueryRule.LIKE:
+                sb.append(" like ?");
+                values[index++] = "%" + vs[0].toString().replace('*', '%') + "%";
+                return index;
+            case QueryRule.BETWEEN:
+                sb.append(" between ? and ?");
+                values[index++] = vs[0];
+                values[index++] = vs[1];
+                return index;
+            case QueryRule.ISNULL:
+                sb.append(" is null");
+                return index;
+            case QueryRule.ISNOTNULL:
+                sb.append(" is not null");
+                return index;
+            case QueryRule.ISEMPTY:
+                sb.append(" = ''");
+                return index;
+            case QueryRule.ISNOTEMPTY:
+                sb.append(" <> ''");
+                return index;
+            case QueryRule.IN:
+            case QueryRule.NOTIN:
+                sb.append(QueryRule.IN == rule.getType() ? " in (" : " not in (");
+                int start = index;
+                if (vs.length == 1 && vs[0] instanceof List) {
+                    for (Object v : (List<?>) vs[0]) {
+                        index = writeInValue(sb, v, index, start);
+                    }
+                } else {
+                    for (Object v : vs) {
+                        index = writeInValue(sb, v, index, start);
+                    }
+                }
+                sb.append(')');
+                return index;
+            default:
+                return index;
+        }
+        if (arity > 0) {
+            values[index++] = vs[0];
+        }
+        return index;
+    }
+
+    private int writeInValue(StringBuilder sb, Object value, int index, int start) {
+        if (value == null) {
+            return index;
+        }
+        if (index > start) {
+            sb.append(',');
+        }
+        sb.append('?');
+        values[index] = value;
+        return index + 1;
+    }
+
+    /**
+     * 写入一个排序字段
+     * @param sb
+     * @param rule
+     * @param whereEnd where条件结束的位置，用于判断是否是第一个排序字段
+     */
+    private void writeOrder(StringBuilder sb, Rule rule, int whereEnd) {
+        if (rule.getType() != QueryRule.ASC_ORDER && rule.getType() != QueryRule.DESC_ORDER) {
+            return;
+        }
+        String name = rule.getPropertyName();
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        if (sb.length() > whereEnd) {
+            sb.append(',');
+        }
+        sb.append(name).append(rule.getType() == QueryRule.ASC_ORDER ? " asc" : " desc");
+    }
+}
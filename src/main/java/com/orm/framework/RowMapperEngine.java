@@ -0,0 +1,30 @@
+package com.orm.framework;
+
+/**
+ * EntityOperation生成RowMapper的方式
+ */
+public enum RowMapperEngine {
+    /**
+     * 反射：每行newInstance，按列名查找PropertyMapping后通过Method设值
+     */
+    REFLECTION,
+    /**
+     * 生成：按实体类预先绑定构造函数和setter的函数对象，按列下标直接取值、赋值
+     */
+    GENERATED;
+
+    //通过启动参数 -Dorm.rowMapper.engine=generated 切换默认方式
+    public static final String ENGINE_PROPERTY = "orm.rowMapper.engine";
+
+    /**
+     * 获取默认的RowMapper生成方式，未配置时使用反射
+     * @return
+     */
+    public static RowMapperEngine defaultEngine() {
+        String engine = System.getProperty(ENGINE_PROPERTY);
+        if (engine == null || engine.trim().length() == 0) {
+            return REFLECTION;
+        }
+        return valueOf(engine.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,150 @@
+package com.orm.framework;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * 按排序键分页的续传令牌：上一页最后一条记录的排序键值，每个值按类型标记+Base64编码，用"."连接，null只写类型标记N。
+ * 开头是排序列签名和全部编码值的CRC32校验值，排序方式不同或被改动、截断的令牌不能使用。
+ * 校验值不是签名，只用于识别无效的令牌；令牌来自客户端，不使用Java反序列化
+ */
+final class SeekToken {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private SeekToken() {
+    }
+
+    /**
+     * 是否支持该类型的排序键，selectSeek查询前检查
+     * @param type 属性类型
+     * @return
+     */
+    static boolean supports(Class<?> type) {
+        return type.isPrimitive() && type != char.class && type != void.class
+                || type.isEnum()
+                || type == String.class || type == Long.class || type == Integer.class || type == Short.class
+                || type == Byte.class || type == BigDecimal.class || type == BigInteger.class || type == Double.class
+                || type == Float.class || type == Boolean.class || Date.class.isAssignableFrom(type);
+    }
+
+    /**
+     * @param signature 排序列签名，如"create_time desc,id desc"
+     * @param values 排序键值，可以为null
+     * @return
+     */
+    static String encode(String signature, Object[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            sb.append('.');
+            if (value == null) {
+                sb.append('N');
+            } else {
+                sb.append(type(value)).append(ENCODER.encodeToString(text(value).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return checksum(signature, sb) + sb.toString();
+    }
+
+    /**
+     * @param signature 排序列签名，与生成令牌时相同
+     * @param token
+     * @param count 排序键个数
+     * @return 排序键值，可能含null
+     */
+    static Object[] decode(String signature, String token, int count) {
+        int dot = token.indexOf('.');
+        String[] parts = token.split("\\.", -1);
+        if (dot < 0 || parts.length != count + 1 || !parts[0].equals(checksum(signature, token.substring(dot)))) {
+            throw new IllegalArgumentException("continuation token does not match order by " + signature + " or has been modified");
+        }
+        Object[] values = new Object[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                String part = parts[i + 1];
+                if (part.equals("N")) {
+                    continue;
+                }
+                values[i] = parse(part.charAt(0), new String(DECODER.decode(part.substring(1)), StandardCharsets.UTF_8));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid continuation token: " + token, e);
+        }
+        return values;
+    }
+
+    private static String checksum(String signature, CharSequence body) {
+        CRC32 crc = new CRC32();
+        crc.update(signature.getBytes(StandardCharsets.UTF_8));
+        crc.update(body.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static char type(Object value) {
+        if (value instanceof String) {
+            return 'S';
+        } else if (value instanceof Long) {
+            return 'L';
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return 'I';
+        } else if (value instanceof BigDecimal) {
+            return 'B';
+        } else if (value instanceof BigInteger) {
+            return 'G';
+        } else if (value instanceof Double) {
+            return 'F';
+        } else if (value instanceof Float) {
+            return 'R';
+        } else if (value instanceof Boolean) {
+            return 'Z';
+        } else if (value instanceof Timestamp) {
+            return 'T';
+        } else if (value instanceof java.sql.Date) {
+            return 'D';
+        } else if (value instanceof Date) {
+            return 'M';
+        }
+        throw new IllegalArgumentException("sort key type " + value.getClass().getName() + " can not be used for seek pagination");
+    }
+
+    private static String text(Object value) {
+        if (value instanceof Date && !(value instanceof Timestamp) && !(value instanceof java.sql.Date)) {
+            return Long.toString(((Date) value).getTime());
+        }
+        return value.toString();
+    }
+
+    private static Object parse(char type, String s) {
+        switch (type) {
+            case 'S':
+                return s;
+            case 'L':
+                return Long.valueOf(s);
+            case 'I':
+                return Integer.valueOf(s);
+            case 'B':
+                return new BigDecimal(s);
+            case 'G':
+                return new BigInteger(s);
+            case 'F':
+                return Double.valueOf(s);
+            case 'R':
+                return Float.valueOf(s);
+            case 'Z':
+                return Boolean.valueOf(s);
+            case 'T':
+                return Timestamp.valueOf(s);
+            case 'D':
+                return java.sql.Date.valueOf(s);
+            case 'M':
+                return new Date(Long.parseLong(s));
+            default:
+                throw new IllegalArgumentException("unknown type " + type);
+        }
+    }
+}
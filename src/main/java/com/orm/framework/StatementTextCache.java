@@ -0,0 +1,128 @@
+package com.orm.framework;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 生成的INSERT/UPDATE/REPLACE/UPSERT语句文本缓存：按(表名, 操作类型, 写入列的位图)缓存，
+ * 同一列组合的写入直接复用同一个SQL字符串，不再拼接。
+ * 位图的第i位对应EntityOperation.columns的第i列，所以缓存只在同一个实体类（同一个Dao）内共享。
+ */
+final class StatementTextCache {
+    enum Kind { INSERT, UPDATE, REPLACE, UPSERT }
+
+    private final int maxEntries;
+    private final ConcurrentMap<Key, String> cache = new ConcurrentHashMap<>();
+    //查询用的key，每个线程复用一个，只有放入缓存时才复制
+    private final ThreadLocal<Key> probe = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    StatementTextCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 取当前线程的查询key并清空位图，调用方再用set标记要写入的列
+     * @param table
+     * @param kind
+     * @param columns 实体的列数
+     * @return
+     */
+    Key probe(String table, Kind kind, int columns) {
+        Key key = probe.get();
+        key.reset(table, kind, columns);
+        return key;
+    }
+
+    String get(Key key) {
+        return cache.get(key);
+    }
+
+    /**
+     * 放入缓存，返回缓存中的SQL（并发放入同一个key时，所有线程拿到同一个字符串对象）
+     * @param key
+     * @param sql
+     * @return
+     */
+    String put(Key key, String sql) {
+        if (cache.size() >= maxEntries) {
+            //超过上限时随意淘汰一个，表名和列组合通常很少，正常情况下不会走到这里
+            Iterator<Key> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        String prev = cache.putIfAbsent(key.copy(), sql);
+        return prev == null ? sql : prev;
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    static final class Key {
+        private String table;
+        private Kind kind;
+        private long[] mask = new long[1];
+
+        private void reset(String table, Kind kind, int columns) {
+            this.table = table;
+            this.kind = kind;
+            int words = (columns + 63) >>> 6;
+            if (mask.length != words) {
+                mask = new long[words];
+            } else {
+                Arrays.fill(mask, 0L);
+            }
+        }
+
+        void set(int i) {
+            mask[i >>> 6] |= 1L << i;
+        }
+
+        boolean isSet(int i) {
+            return (mask[i >>> 6] & (1L << i)) != 0;
+        }
+
+        boolean isEmpty() {
+            for (long word : mask) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Key copy() {
+            Key key = new Key();
+            key.table = table;
+            key.kind = kind;
+            key.mask = mask.clone();
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && table.equals(other.table) && Arrays.equals(mask, other.mask);
+        }
+
+        @Override
+        public int hashCode() {
+            return (table.hashCode() * 31 + kind.ordinal()) * 31 + Arrays.hashCode(mask);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.orm.framework;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * 工具类：结果集列值到实体属性类型的转换器。转换器在生成列绑定计划时按（列类型，属性类型）选定一次，逐行复用。
+ */
+final class TypeConverters {
+
+    /**列值转换器**/
+    interface Converter {
+        Object convert(Object value);
+    }
+
+    //列类型与属性类型一致，不做转换
+    static final Converter IDENTITY = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value;
+        }
+    };
+
+    private static final Converter TO_LONG = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Number && !(value instanceof Long) ? ((Number) value).longValue() : value;
+        }
+    };
+
+    private static final Converter TO_INTEGER = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Number && !(value instanceof Integer) ? ((Number) value).intValue() : value;
+        }
+    };
+
+    private static final Converter TO_SHORT = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Number && !(value instanceof Short) ? ((Number) value).shortValue() : value;
+        }
+    };
+
+    private static final Converter TO_DOUBLE = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Number && !(value instanceof Double) ? ((Number) value).doubleValue() : value;
+        }
+    };
+
+    private static final Converter TO_FLOAT = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Number && !(value instanceof Float) ? ((Number) value).floatValue() : value;
+        }
+    };
+
+    private static final Converter TO_BIG_DECIMAL = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Number && !(value instanceof BigDecimal) ? new BigDecimal(value.toString()) : value;
+        }
+    };
+
+    //mysql的tinyint(1)/bit可能以数值返回
+    private static final Converter TO_BOOLEAN = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Number ? ((Number) value).intValue() != 0 : value;
+        }
+    };
+
+    private static final Converter TO_STRING = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof String ? value : value.toString();
+        }
+    };
+
+    private static final Converter TO_TIMESTAMP = new Converter() {
+        @Override
+        public Object convert(Object value) {
+            return value instanceof Date && !(value instanceof Timestamp) ? new Timestamp(((Date) value).getTime()) : value;
+        }
+    };
+
+    private TypeConverters() {
+    }
+
+    /**
+     * 根据列的Java类型和属性类型选择转换器
+     * @param propertyType 属性类型
+     * @param columnClassName ResultSetMetaData#getColumnClassName
+     * @return
+     */
+    static Converter forColumn(Class<?> propertyType, String columnClassName) {
+        Class<?> target = LambdaAccessors.wrap(propertyType);
+        if (target.isEnum()) {
+            //枚举由PropertyMapping从字符串转换
+            return IDENTITY;
+        }
+        Class<?> columnClass = loadColumnClass(columnClassName);
+        if (columnClass != null && target.isAssignableFrom(columnClass)) {
+            return IDENTITY;
+        }
+        if (target == Long.class) {
+            return TO_LONG;
+        } else if (target == Integer.class) {
+            return TO_INTEGER;
+        } else if (target == Short.class) {
+            return TO_SHORT;
+        } else if (target == Double.class) {
+            return TO_DOUBLE;
+        } else if (target == Float.class) {
+            return TO_FLOAT;
+        } else if (target == BigDecimal.class) {
+            return TO_BIG_DECIMAL;
+        } else if (target == Boolean.class) {
+            return TO_BOOLEAN;
+        } else if (target == String.class) {
+            return TO_STRING;
+        } else if (target == Timestamp.class) {
+            return TO_TIMESTAMP;
+        }
+        return IDENTITY;
+    }
+
+    private static Class<?> loadColumnClass(String columnClassName) {
+        if (columnClassName == null) {
+            return null;
+        }
+        try {
+            return Class.forName(columnClassName, false, TypeConverters.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.orm.framework;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 延迟写入缓冲区：insert/update先放入有界缓冲区，同一主键的多次写入合并为一条，
+ * 由后台线程在记录数达到flushSize或到达定时间隔时批量刷出。缓冲区满时写入线程等待刷出（背压）。
+ * 刷出全部在后台线程中按顺序串行执行，close()时刷出剩余记录
+ */
+final class WriteBehindBuffer {
+    private static final Logger log = Logger.getLogger(WriteBehindBuffer.class);
+
+    /**
+     * 执行实际的写入
+     */
+    interface Flusher {
+        /**
+         * @param inserts 要插入的记录
+         * @param updates 要按主键更新的记录
+         * @return 写入失败的记录数
+         */
+        int flush(List<ParsedRow> inserts, List<ParsedRow> updates);
+    }
+
+    //一条待写记录，row为写入时解析结果的副本，null列表示不写入
+    private static final class Pending {
+        boolean insert;
+        final ParsedRow row;
+
+        Pending(boolean insert, ParsedRow row) {
+            this.insert = insert;
+            this.row = row;
+        }
+
+        //后写入的非null列覆盖先写入的值；任一次是insert则合并后为insert
+        void merge(boolean insert, ParsedRow later) {
+            this.insert |= insert;
+            for (int i = 0; i < later.size(); i++) {
+                if (!later.isNull(i)) {
+                    row.set(i, later.values[i]);
+                }
+            }
+        }
+    }
+
+    private final String name;
+    private final WriteBehindOptions options;
+    private final Flusher flusher;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    //主键 -> 待写记录，主键为空的insert使用唯一的Object作为键，保持写入顺序
+    private Map<Object, Pending> pending = new LinkedHashMap<>();
+    private boolean flushRequested = false;
+    //后台线程正在写入取出的记录
+    private boolean flushing = false;
+    private volatile boolean closed = false;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (Throwable e) {
+                //异常会使定时任务停止执行，这里只记录日志
+                log.error("write-behind " + name + " 刷出失败", e);
+            }
+        }
+    };
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    WriteBehindBuffer(String name, WriteBehindOptions options, Flusher flusher) {
+        this.name = name;
+        this.options = options;
+        this.flusher = flusher;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "write-behind-" + WriteBehindBuffer.this.name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        //关闭后停止定时刷出，已提交的立即刷出仍然执行
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(true);
+        this.scheduler = executor;
+        scheduler.scheduleWithFixedDelay(flushTask, options.getFlushIntervalMillis(), options.getFlushIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 放入一条待写记录。pk不为null且已有该主键的待写记录时合并，否则占用一个位置，缓冲区满时等待
+     * @param pk
+     * @param insert
+     * @param row 解析结果，会被复制
+     * @throws InterruptedException
+     */
+    void enqueue(Object pk, boolean insert, ParsedRow row) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(options.getOfferTimeoutMillis());
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("write-behind " + name + " 已关闭");
+                }
+                Pending p = pk == null ? null : pending.get(pk);
+                if (p != null) {
+                    p.merge(insert, row);
+                    enqueued.incrementAndGet();
+                    coalesced.incrementAndGet();
+                    return;
+                }
+                if (pending.size() < options.getCapacity()) {
+                    break;
+                }
+                requestFlush();
+                if (nanos <= 0) {
+                    throw new IllegalStateException("write-behind " + name + " 缓冲区已满，等待"
+                            + options.getOfferTimeoutMillis() + "ms后仍未刷出");
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            pending.put(pk == null ? new Object() : pk, new Pending(insert, row.copy()));
+            enqueued.incrementAndGet();
+            if (pending.size() >= options.getFlushSize()) {
+                requestFlush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //通知后台线程立即刷出，已有未执行的刷出请求时不重复提交，调用时需持有lock
+    private void requestFlush() {
+        if (!flushRequested && !closed) {
+            flushRequested = true;
+            scheduler.execute(flushTask);
+        }
+    }
+
+    /**
+     * 由后台线程立即刷出缓冲区中的全部记录，当前线程等待刷出结束。
+     * 刷出不在调用线程执行，不受调用线程的事务和动态数据源设置影响
+     */
+    void flushAndWait() {
+        lock.lock();
+        try {
+            //同步写入前都会调用，没有待写和正在写入的记录时不切换线程
+            if (pending.isEmpty() && !flushing) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        Future<?> future;
+        try {
+            future = scheduler.submit(flushTask);
+        } catch (RejectedExecutionException e) {
+            //已关闭，剩余记录由close()刷出
+            return;
+        }
+        await(future);
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //flushTask已捕获所有异常，不会走到这里
+            log.error("write-behind " + name + " 刷出失败", e.getCause());
+        }
+    }
+
+    //刷出缓冲区中的全部记录，只在后台线程中执行，先放入缓冲区的记录先写入
+    private void flush() {
+        Map<Object, Pending> batch;
+        lock.lock();
+        try {
+            flushRequested = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            //换一个新的缓冲区，刷出期间写入线程可以继续写入新缓冲区
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            flushing = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            write(batch);
+        } finally {
+            lock.lock();
+            try {
+                flushing = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //写入取出的记录，insert和update分别批量执行，并更新统计
+    private void write(Map<Object, Pending> batch) {
+        List<ParsedRow> inserts = new ArrayList<>();
+        List<ParsedRow> updates = new ArrayList<>();
+        for (Pending p : batch.values()) {
+            (p.insert ? inserts : updates).add(p.row);
+        }
+        long begin = System.nanoTime();
+        int failed;
+        try {
+            failed = flusher.flush(inserts, updates);
+        } catch (RuntimeException e) {
+            failed = batch.size();
+            log.error("write-behind " + name + " 刷出" + batch.size() + "条记录失败", e);
+        }
+        long elapsed = System.nanoTime() - begin;
+        flushes.incrementAndGet();
+        flushedRows.addAndGet(batch.size() - failed);
+        failedRows.addAndGet(failed);
+        flushNanos.addAndGet(elapsed);
+        lastFlushNanos = elapsed;
+        if (elapsed > maxFlushNanos) {
+            maxFlushNanos = elapsed;
+        }
+    }
+
+    /**
+     * 由后台线程刷出剩余记录后停止后台线程，之后不再接受写入。应在数据源关闭之前调用
+     */
+    void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        //关闭前提交最后一次刷出，关闭后不再接受新的任务
+        Future<?> last = scheduler.submit(flushTask);
+        scheduler.shutdown();
+        await(last);
+        try {
+            scheduler.awaitTermination(options.getFlushIntervalMillis() + 10000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("write-behind " + name + " 已关闭，共刷出" + flushedRows.get() + "条，失败" + failedRows.get() + "条");
+    }
+
+    /**
+     * 缓冲区中等待写入的记录数
+     * @return
+     */
+    int getQueueDepth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getEnqueued() {
+        return enqueued.get();
+    }
+
+    /**
+     * 与已有待写记录合并的写入次数
+     * @return
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    long getFlushCount() {
+        return flushes.get();
+    }
+
+    long getFlushedRows() {
+        return flushedRows.get();
+    }
+
+    long getFailedRows() {
+        return failedRows.get();
+    }
+
+    double getAvgFlushMillis() {
+        long n = flushes.get();
+        return n == 0 ? 0 : flushNanos.get() / 1e6 / n;
+    }
+
+    double getLastFlushMillis() {
+        return lastFlushNanos / 1e6;
+    }
+
+    double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+}
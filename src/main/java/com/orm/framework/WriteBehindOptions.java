@@ -0,0 +1,83 @@
+package com.orm.framework;
+
+/**
+ * 延迟写入（write-behind）的参数，Dao重写getWriteBehindOptions()返回非null时开启
+ */
+public class WriteBehindOptions {
+    private int capacity = 10000; //缓冲区最多容纳的待写记录数（同一主键合并后计一条）
+    private int flushSize = 1000; //待写记录数达到flushSize时立即刷出
+    private long flushIntervalMillis = 1000; //定时刷出的间隔
+    private long offerTimeoutMillis = 5000; //缓冲区满时写入线程最多等待的时间
+
+    public static WriteBehindOptions defaults() {
+        return new WriteBehindOptions();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 缓冲区容量，满时insert/update阻塞等待刷出
+     * @param capacity
+     * @return
+     */
+    public WriteBehindOptions capacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        return this;
+    }
+
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    /**
+     * 待写记录数达到flushSize时由后台线程立即刷出，不等定时
+     * @param flushSize
+     * @return
+     */
+    public WriteBehindOptions flushSize(int flushSize) {
+        if (flushSize < 1) {
+            throw new IllegalArgumentException("flushSize must be positive: " + flushSize);
+        }
+        this.flushSize = flushSize;
+        return this;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * 定时刷出的间隔，即一条写入最多在缓冲区中停留的大致时间
+     * @param flushIntervalMillis
+     * @return
+     */
+    public WriteBehindOptions flushIntervalMillis(long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("flushIntervalMillis must be positive: " + flushIntervalMillis);
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+        return this;
+    }
+
+    public long getOfferTimeoutMillis() {
+        return offerTimeoutMillis;
+    }
+
+    /**
+     * 缓冲区满时写入线程最多等待的时间，超时抛出IllegalStateException
+     * @param offerTimeoutMillis
+     * @return
+     */
+    public WriteBehindOptions offerTimeoutMillis(long offerTimeoutMillis) {
+        if (offerTimeoutMillis < 0) {
+            throw new IllegalArgumentException("offerTimeoutMillis must not be negative: " + offerTimeoutMillis);
+        }
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        return this;
+    }
+}
@@ -2,17 +2,24 @@ package com.orm.transaction.dao;
 
 import com.orm.framework.BaseDaoSupport;
 import com.orm.transaction.entity.Order;
+import org.apache.log4j.Logger;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.Resource;
 import javax.core.common.jdbc.datasource.DynamicDataSource;
 import javax.sql.DataSource;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Repository
 public class OrderDao extends BaseDaoSupport<Order, Long> {
 
+    private static final Logger log = Logger.getLogger(OrderDao.class);
+
     private SimpleDateFormat yearFormat = new SimpleDateFormat("yyyy");
     private SimpleDateFormat fullDataFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
     private DynamicDataSource dataSource;
@@ -38,6 +45,52 @@ public class OrderDao extends BaseDaoSupport<Order, Long> {
      * @throws Exception
      */
     public boolean insertOne(Order order) throws Exception {
+        Integer dbRouter = prepare(order);
+        System.out.println("自动分配到【DB_】" + dbRouter + "】数据源");
+        this.dataSource.getDataSourceEntry().set(dbRouter);
+        Long orderId = super.insertAndReturnId(order);
+        order.setId(orderId);
+        return orderId > 0;
+    }
+
+    /**
+     * 批量插入Order：按创建年份分组，每组切换到对应年份的数据源后批量插入，生成的ID写回每个Order。
+     * 插入完成（或失败）后恢复调用前的数据源
+     * @param orders
+     * @return 插入的记录数
+     * @throws Exception
+     */
+    public int insertBatch(List<Order> orders) throws Exception {
+        Map<Integer, List<Order>> groups = new LinkedHashMap<>();
+        for (Order order : orders) {
+            Integer dbRouter = prepare(order);
+            List<Order> group = groups.get(dbRouter);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(dbRouter, group);
+            }
+            group.add(order);
+        }
+        int count = 0;
+        String previous = this.dataSource.getDataSourceEntry().get();
+        try {
+            for (Map.Entry<Integer, List<Order>> entry : groups.entrySet()) {
+                log.debug("自动分配到【DB_" + entry.getKey() + "】数据源，共" + entry.getValue().size() + "条");
+                this.dataSource.getDataSourceEntry().set(entry.getKey());
+                count += super.insertAllReturningIds(entry.getValue()).size();
+            }
+        } finally {
+            this.dataSource.getDataSourceEntry().set(previous);
+        }
+        return count;
+    }
+
+    /**
+     * 补全创建时间并返回所属年份
+     * @param order
+     * @return
+     */
+    private Integer prepare(Order order) {
         //约定优于配置
         Date date = null;
         if (order.getCreateTime() == null) {
@@ -46,13 +99,8 @@ public class OrderDao extends BaseDaoSupport<Order, Long> {
         } else {
             date = new Date(order.getCreateTime());
         }
-        Integer dbRouter = Integer.valueOf(yearFormat.format(date));
-        System.out.println("自动分配到【DB_】" + dbRouter + "】数据源");
-        this.dataSource.getDataSourceEntry().set(dbRouter);
         order.setCreateTimeFmt(fullDataFormat.format(date));
-        Long orderId = super.insertAndReturnId(order);
-        order.setId(orderId);
-        return orderId > 0;
+        return Integer.valueOf(yearFormat.format(date));
     }
 
 }
@@ -13,6 +13,15 @@ public class Page<T> implements Serializable {
 
     private static final int DEFAULT_PAGE_SIZE = 20;
 
+    /**
+     * 总记录数的来源
+     */
+    public enum TotalType {
+        EXACT, //count查询得到的准确值
+        ESTIMATED, //执行计划或统计信息估算的值
+        UNKNOWN //没有查询总数，total为已知的下限：本页之前的记录数+本页记录数，有下一页时再加1
+    }
+
     private int pageSize = DEFAULT_PAGE_SIZE; //每页的记录数
 
     private long start; //当前页第一条数据在List中的位置，从0开始
@@ -21,6 +30,10 @@ public class Page<T> implements Serializable {
 
     private long total; //总记录数
 
+    private TotalType totalType = TotalType.EXACT; //总记录数的来源
+
+    private Boolean hasNext; //是否有下一页，为null时按总记录数计算
+
     /**
      * 构造方法，只构造空页
      */
@@ -42,6 +55,28 @@ public class Page<T> implements Serializable {
         this.rows = rows;
     }
 
+    /**
+     * 总记录数不一定准确时使用的构造方法，是否有下一页由查询时多取一条得到
+     * @param start 本页数据在数据库中的起始位置
+     * @param totalSize 总记录条数，准确值、估算值或下限
+     * @param totalType 总记录条数的来源
+     * @param pageSize 本页容量
+     * @param rows 本页包含的数据
+     * @param hasNext 是否有下一页
+     */
+    public Page(long start, long totalSize, TotalType totalType, int pageSize, List<T> rows, boolean hasNext) {
+        this(start, totalSize, pageSize, rows);
+        this.totalType = totalType;
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * 取总记录数的来源
+     */
+    public TotalType getTotalType() {
+        return totalType;
+    }
+
     /**
      * 取总记录数
      * @return
@@ -94,6 +129,9 @@ public class Page<T> implements Serializable {
      * 该页是否有下一页
      */
     public boolean hasNextPage() {
+        if (hasNext != null) {
+            return hasNext;
+        }
         return this.getPageNo() < this.getTotalPageCount() - 1;
     }
 
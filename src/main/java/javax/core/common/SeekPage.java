@@ -0,0 +1,53 @@
+package javax.core.common;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按排序键定位（seek）的分页结果：当前页数据和取下一页用的续传令牌，不含页码和总记录数
+ */
+public class SeekPage<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private List<T> rows; //当前页中存放的记录
+
+    private String nextToken; //下一页的续传令牌，没有下一页时为null
+
+    /**
+     * 构造方法，只构造空页
+     */
+    public SeekPage() {
+        this(new ArrayList<T>(), null);
+    }
+
+    /**
+     * @param rows 本页包含的数据
+     * @param nextToken 下一页的续传令牌，没有下一页时为null
+     */
+    public SeekPage(List<T> rows, String nextToken) {
+        this.rows = rows;
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * 取当前页中记录
+     */
+    public List<T> getRows() {
+        return rows;
+    }
+
+    /**
+     * 取下一页的续传令牌，原样传回查询方法即可取得下一页
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * 该页是否有下一页
+     */
+    public boolean hasNextPage() {
+        return nextToken != null;
+    }
+}
@@ -3,6 +3,7 @@ package javax.core.common.jdbc;
 import com.orm.framework.QueryRule;
 
 import javax.core.common.Page;
+import javax.core.common.SeekPage;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +27,16 @@ public interface BaseDao<T, PK> {
      */
     Page<?> select(QueryRule queryRule, int pageNo, int pageSize) throws Exception;
 
+    /**
+     * 按排序键定位获取分页结果，不使用页码
+     * @param queryRule 查询条件和排序
+     * @param token 上一页返回的续传令牌，第一页为null
+     * @param pageSize 每页条数
+     * @return
+     * @throws Exception
+     */
+    SeekPage<T> selectSeek(QueryRule queryRule, String token, int pageSize) throws Exception;
+
     /**
      * 根据SQL获取列表
      * @param sql SQL语句
@@ -93,4 +104,21 @@ public interface BaseDao<T, PK> {
      * @throws Exception
      */
     boolean update(T entity) throws Exception;
+
+    /**
+     * 批量修改，按每条记录要修改的列分组批量执行
+     * @param list entity中的ID不能为空
+     * @return 每条记录是否修改成功：1 修改了记录，0 没有匹配的记录或执行失败，顺序与list一致
+     * @throws Exception
+     */
+    int[] updateAll(List<T> list) throws Exception;
+
+    /**
+     * 批量修改指定的列
+     * @param list entity中的ID不能为空
+     * @param columns 要修改的列名
+     * @return 每条记录是否修改成功：1 修改了记录，0 没有匹配的记录或执行失败，顺序与list一致
+     * @throws Exception
+     */
+    int[] updateAll(List<T> list, String... columns) throws Exception;
 }
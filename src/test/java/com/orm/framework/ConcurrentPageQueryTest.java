@@ -0,0 +1,215 @@
+package com.orm.framework;
+
+import com.orm.transaction.entity.Member;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.core.common.Page;
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * EXACT_CONCURRENT在count为0时取消数据查询：数据查询还没开始执行时不会再执行，数据源用动态代理模拟
+ */
+public class ConcurrentPageQueryTest {
+
+    static class MemberDao extends BaseDaoSupport<Member, Long> {
+        @Override
+        protected String getPKColumn() {
+            return "id";
+        }
+
+        @Override
+        protected void setDataSource(DataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+        }
+    }
+
+    private final List<String> prepared = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> closed = Collections.synchronizedList(new ArrayList<String>());
+    //数据查询线程在getConnection中等待
+    private CountDownLatch connectionGate;
+    //数据查询线程在prepareStatement中等待
+    private CountDownLatch prepareGate;
+    //count查询等数据查询线程进入getConnection、prepareStatement后再返回，保证数据查询已开始，取消时不是直接从线程池中撤销
+    private CountDownLatch connecting;
+    private CountDownLatch preparing;
+    private CountDownLatch dataDone;
+    private MemberDao dao;
+
+    @Before
+    public void setUp() {
+        connectionGate = new CountDownLatch(0);
+        prepareGate = new CountDownLatch(0);
+        connecting = new CountDownLatch(0);
+        preparing = new CountDownLatch(0);
+        dataDone = new CountDownLatch(1);
+        dao = new MemberDao();
+        dao.setDataSource(proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                if ("getConnection".equals(method.getName())) {
+                    if (isDataThread()) {
+                        connecting.countDown();
+                        connectionGate.await(5, TimeUnit.SECONDS);
+                    }
+                    return connection();
+                }
+                return defaultValue(method);
+            }
+        }));
+    }
+
+    private static boolean isDataThread() {
+        return Thread.currentThread().getName().startsWith("page-query-");
+    }
+
+    @Test
+    public void zeroCountBeforeDataConnectionSkipsDataQuery() throws Exception {
+        connectionGate = new CountDownLatch(1);
+        connecting = new CountDownLatch(1);
+        Page<Member> page = dao.select(QueryRule.getInstance(), 1, 10, PageMode.EXACT_CONCURRENT);
+        connectionGate.countDown();
+        assertTrue(dataDone.await(5, TimeUnit.SECONDS));
+        assertEquals(0, page.getTotal());
+        assertEquals(1, executed.size());
+        assertTrue(executed.get(0).startsWith("select count(1) from t_member"));
+        assertEquals(1, prepared.size());
+    }
+
+    @Test
+    public void zeroCountWhilePreparingSkipsDataQuery() throws Exception {
+        prepareGate = new CountDownLatch(1);
+        preparing = new CountDownLatch(1);
+        Page<Member> page = dao.select(QueryRule.getInstance(), 1, 10, PageMode.EXACT_CONCURRENT);
+        prepareGate.countDown();
+        assertTrue(dataDone.await(5, TimeUnit.SECONDS));
+        assertEquals(0, page.getTotal());
+        assertEquals(2, prepared.size());
+        assertEquals(1, executed.size());
+        assertTrue(executed.get(0).startsWith("select count(1) from t_member"));
+        //数据查询的语句创建后没有执行就关闭了
+        assertTrue(closed.contains(dataSql()));
+    }
+
+    private String dataSql() {
+        synchronized (prepared) {
+            for (String sql : prepared) {
+                if (sql.contains(" limit ")) {
+                    return sql;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Connection connection() {
+        final boolean data = isDataThread();
+        return proxy(Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                if ("prepareStatement".equals(method.getName())) {
+                    String sql = (String) args[0];
+                    prepared.add(sql);
+                    if (data) {
+                        preparing.countDown();
+                        prepareGate.await(5, TimeUnit.SECONDS);
+                    }
+                    return statement(sql);
+                } else if ("close".equals(method.getName()) && data) {
+                    dataDone.countDown();
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private PreparedStatement statement(final String sql) {
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                if ("executeQuery".equals(method.getName())) {
+                    executed.add(sql);
+                    if (sql.startsWith("select count(1)")) {
+                        connecting.await(5, TimeUnit.SECONDS);
+                        preparing.await(5, TimeUnit.SECONDS);
+                        return resultSet(0L);
+                    }
+                    return resultSet();
+                } else if ("close".equals(method.getName())) {
+                    closed.add(sql);
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private ResultSet resultSet(Long... values) {
+        final List<Long> rows = new ArrayList<>(Arrays.asList(values));
+        final Long[] current = new Long[1];
+        final ResultSetMetaData meta = proxy(ResultSetMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getColumnCount".equals(method.getName())) {
+                    return 1;
+                } else if ("getColumnType".equals(method.getName())) {
+                    return java.sql.Types.BIGINT;
+                } else if (method.getReturnType() == String.class) {
+                    return "c";
+                }
+                return defaultValue(method);
+            }
+        });
+        return proxy(ResultSet.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "next":
+                        current[0] = rows.isEmpty() ? null : rows.remove(0);
+                        return current[0] != null;
+                    case "getLong":
+                    case "getObject":
+                        return current[0];
+                    case "getMetaData":
+                        return meta;
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ConcurrentPageQueryTest.class.getClassLoader(), new Class[]{type}, handler);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,166 @@
+package com.orm.framework;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 脏检查能识别hashCode相同但值不同的修改
+ */
+public class DirtyTrackerTest {
+
+    public enum Status { NEW, PAID }
+
+    @Entity
+    @Table(name = "t_tracked")
+    public static class Tracked implements Serializable {
+        @Id
+        private Long id;
+        private String name;
+        private Long code;
+        private Status status;
+        private Timestamp updated;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Long getCode() {
+            return code;
+        }
+
+        public void setCode(Long code) {
+            this.code = code;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public Timestamp getUpdated() {
+            return updated;
+        }
+
+        public void setUpdated(Timestamp updated) {
+            this.updated = updated;
+        }
+    }
+
+    private EntityOperation<Tracked> op;
+
+    @Before
+    public void setUp() throws Exception {
+        op = new EntityOperation<Tracked>(Tracked.class, "id");
+        op.setDirtyTracking(true);
+    }
+
+    private Tracked loaded() {
+        Tracked t = new Tracked();
+        t.setId(1L);
+        t.setName("Aa");
+        t.setCode(0L);
+        t.setStatus(Status.NEW);
+        t.setUpdated(timestamp(100));
+        return op.mapped(t);
+    }
+
+    private static Timestamp timestamp(int nanos) {
+        Timestamp ts = new Timestamp(1500000000000L);
+        ts.setNanos(nanos);
+        return ts;
+    }
+
+    private int[] changed(Tracked t) {
+        return op.changedColumns(t, op.parseLocal(t));
+    }
+
+    private int[] columns(String... names) {
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = op.columnIndex(names[i]);
+        }
+        return indexes;
+    }
+
+    private static void assertColumns(int[] expected, int[] actual) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    @Test
+    public void unchangedEntityHasNoChangedColumns() {
+        Tracked t = loaded();
+        t.setName(new String("Aa"));
+        t.setUpdated(timestamp(100));
+        assertColumns(new int[0], changed(t));
+    }
+
+    @Test
+    public void stringsWithEqualHashCodeAreDetected() {
+        Tracked t = loaded();
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        t.setName("BB");
+        assertColumns(columns("name"), changed(t));
+    }
+
+    @Test
+    public void longsWithEqualHashCodeAreDetected() {
+        Tracked t = loaded();
+        assertEquals(Long.valueOf(0L).hashCode(), Long.valueOf(0x100000001L).hashCode());
+        t.setCode(0x100000001L);
+        assertColumns(columns("code"), changed(t));
+    }
+
+    @Test
+    public void timestampNanosAreDetected() {
+        Tracked t = loaded();
+        assertEquals(timestamp(100).hashCode(), timestamp(200).hashCode());
+        t.setUpdated(timestamp(200));
+        assertColumns(columns("updated"), changed(t));
+    }
+
+    @Test
+    public void enumIsDetected() {
+        Tracked t = loaded();
+        t.setStatus(Status.PAID);
+        assertColumns(columns("status"), changed(t));
+    }
+
+    @Test
+    public void nullChangesAreDetected() {
+        Tracked t = loaded();
+        t.setName(null);
+        assertColumns(columns("name"), changed(t));
+    }
+
+    @Test
+    public void untrackedEntityReturnsNull() {
+        Tracked t = loaded();
+        op.forget(t);
+        assertNull(changed(t));
+    }
+}
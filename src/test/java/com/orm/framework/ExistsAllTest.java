@@ -0,0 +1,215 @@
+package com.orm.framework;
+
+import com.orm.transaction.entity.Member;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * existsAll、existsAllLong的分块和空值处理，数据源用动态代理模拟，表中只有偶数主键
+ */
+public class ExistsAllTest {
+
+    static class MemberDao extends BaseDaoSupport<Member, Long> {
+        @Override
+        protected String getPKColumn() {
+            return "id";
+        }
+
+        @Override
+        protected void setDataSource(DataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+        }
+    }
+
+    private final List<String> statements = new ArrayList<>();
+    private final List<Integer> parameterCounts = new ArrayList<>();
+    private MemberDao dao;
+
+    @Before
+    public void setUp() {
+        dao = new MemberDao();
+        dao.setDataSource(proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "getConnection".equals(method.getName()) ? connection() : defaultValue(method);
+            }
+        }));
+    }
+
+    private List<Long> ids(long from, long to) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static Set<Long> even(Iterable<Long> ids) {
+        Set<Long> result = new HashSet<>();
+        for (Long id : ids) {
+            if (id != null && id % 2 == 0) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void existsAllQueriesInChunksOfThousand() throws Exception {
+        List<Long> ids = ids(1, 2500);
+        assertEquals(even(ids), dao.existsAll(ids));
+        assertEquals(Arrays.asList(1000, 1000, 500), parameterCounts);
+        assertTrue(statements.get(0).startsWith("select id from t_member where id in (?,?,"));
+    }
+
+    @Test
+    public void existsAllSkipsNullsAndDuplicates() throws Exception {
+        List<Long> ids = ids(1, 1000);
+        ids.add(null);
+        ids.addAll(ids(1, 10));
+        ids.add(0, null);
+        ids.add(1001L);
+        assertEquals(even(ids), dao.existsAll(ids));
+        assertEquals(Arrays.asList(1000, 1), parameterCounts);
+    }
+
+    @Test
+    public void existsAllWithoutIdsRunsNoQuery() throws Exception {
+        assertTrue(dao.existsAll(Collections.<Long>emptyList()).isEmpty());
+        assertTrue(dao.existsAll(Arrays.<Long>asList(null, null)).isEmpty());
+        assertTrue(statements.isEmpty());
+    }
+
+    @Test
+    public void existsAllLongQueriesInChunks() throws Exception {
+        List<Long> ids = ids(1, 2001);
+        ids.add(null);
+        ids.add(2L);
+        LongHashSet result = dao.existsAllLong(ids);
+        Set<Long> expected = even(ids);
+        assertEquals(expected.size(), result.size());
+        for (Long id : expected) {
+            assertTrue(result.contains(id));
+        }
+        assertEquals(Arrays.asList(1000, 1000, 1), parameterCounts);
+    }
+
+    @Test
+    public void existsQueriesByPrimaryKeyWithoutLimit() throws Exception {
+        assertTrue(dao.exists(2L));
+        assertTrue(!dao.exists(3L));
+        assertEquals(Arrays.asList("select 1 from t_member where id = ?", "select 1 from t_member where id = ?"), statements);
+    }
+
+    private Connection connection() {
+        return proxy(Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("prepareStatement".equals(method.getName())) {
+                    statements.add((String) args[0]);
+                    return statement();
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private PreparedStatement statement() {
+        final List<Object> parameters = new ArrayList<>();
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("setObject".equals(method.getName()) || "setLong".equals(method.getName())) {
+                    int index = (Integer) args[0];
+                    while (parameters.size() < index) {
+                        parameters.add(null);
+                    }
+                    parameters.set(index - 1, args[1]);
+                } else if ("executeQuery".equals(method.getName())) {
+                    parameterCounts.add(parameters.size());
+                    List<Long> rows = new ArrayList<>();
+                    for (Object parameter : parameters) {
+                        long id = ((Number) parameter).longValue();
+                        if (id % 2 == 0) {
+                            rows.add(id);
+                        }
+                    }
+                    return resultSet(rows.iterator());
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    private ResultSet resultSet(final Iterator<Long> rows) {
+        final Long[] current = new Long[1];
+        final ResultSetMetaData meta = proxy(ResultSetMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getColumnCount".equals(method.getName())) {
+                    return 1;
+                } else if ("getColumnType".equals(method.getName())) {
+                    return java.sql.Types.BIGINT;
+                } else if (method.getReturnType() == String.class) {
+                    return "id";
+                }
+                return defaultValue(method);
+            }
+        });
+        return proxy(ResultSet.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "next":
+                        current[0] = rows.hasNext() ? rows.next() : null;
+                        return current[0] != null;
+                    case "getLong":
+                        return current[0];
+                    case "getObject":
+                        return current[0];
+                    case "getMetaData":
+                        return meta;
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ExistsAllTest.class.getClassLoader(), new Class[]{type}, handler);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
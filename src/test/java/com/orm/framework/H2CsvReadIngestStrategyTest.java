@@ -0,0 +1,136 @@
+package com.orm.framework;
+
+import com.orm.transaction.entity.Member;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 在H2内存数据库上执行CSVREAD导入和H2的merge语句，检查写入的值
+ */
+public class H2CsvReadIngestStrategyTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    static class MemberDao extends BaseDaoSupport<Member, Long> {
+        @Override
+        protected String getPKColumn() {
+            return "id";
+        }
+
+        @Override
+        protected void setDataSource(DataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+        }
+
+        @Override
+        protected List<BulkIngestStrategy> getBulkIngestStrategies() {
+            return Collections.<BulkIngestStrategy>singletonList(new H2CsvReadIngestStrategy(1));
+        }
+    }
+
+    private JdbcTemplate jdbcTemplate;
+    private MemberDao dao;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ingest" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table t_member (id bigint primary key, name varchar(255), address varchar(255), age int)");
+        dao = new MemberDao();
+        dao.setDataSource(dataSource);
+    }
+
+    private static Member member(Long id, String name, String addr, Integer age) {
+        Member m = new Member(name, addr, age);
+        m.setId(id);
+        return m;
+    }
+
+    private List<Member> all() throws Exception {
+        return dao.select(QueryRule.getInstance().addAscOrder("id"));
+    }
+
+    @Test
+    public void ingestKeepsNullsQuotesCommasAndNewlines() throws Exception {
+        List<Member> members = Arrays.asList(
+                member(1L, "Tom", "Beijing, \"CN\"", 30),
+                member(2L, null, "", null),
+                member(3L, "中文", "line1\nline2\r\nline3", 0),
+                member(4L, "\"", ",", -1),
+                member(5L, "tab\there", " padded ", null));
+        assertEquals(Dialect.H2, dao.getDialect());
+        assertEquals(members.size(), dao.ingest(members));
+        assertEquals(members.toString(), all().toString());
+        //空字符串和null不同
+        assertEquals(Long.valueOf(1), jdbcTemplate.queryForObject("select count(1) from t_member where address = ''", Long.class));
+        assertEquals(Long.valueOf(1), jdbcTemplate.queryForObject("select count(1) from t_member where name is null", Long.class));
+    }
+
+    @Test
+    public void saveAllMergesOnPrimaryKey() throws Exception {
+        dao.ingest(Arrays.asList(member(1L, "Tom", "Beijing", 30), member(2L, "Amy", "Shanghai", 20)));
+        //null列不写入，保留原值
+        int[] counts = dao.saveAll(Arrays.asList(member(1L, "Tommy", null, 31), member(3L, "Bob", "Hangzhou", null)));
+        assertArrayEquals(new int[]{1, 1}, counts);
+        assertEquals(Arrays.asList(member(1L, "Tommy", "Beijing", 31), member(2L, "Amy", "Shanghai", 20),
+                member(3L, "Bob", "Hangzhou", null)).toString(), all().toString());
+    }
+
+    @Test
+    public void binaryValuesAreWrittenAsHex() throws Exception {
+        StringWriter writer = new StringWriter();
+        H2CsvReadIngestStrategy.writeValue(writer, new byte[]{0x00, 0x1f, (byte) 0xab, (byte) 0xff});
+        assertEquals("\"001fabff\"", writer.toString());
+
+        byte[] bytes = {0x00, 0x0a, 0x22, 0x2c, (byte) 0x80, (byte) 0xff};
+        jdbcTemplate.execute("create table t_blob (id int primary key, data varbinary(16))");
+        File file = File.createTempFile("bulk-ingest-test-", ".csv");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+            try {
+                out.write("ID,DATA\n\"1\",");
+                H2CsvReadIngestStrategy.writeValue(out, bytes);
+                out.write("\n\"2\",\n");
+            } finally {
+                out.close();
+            }
+            jdbcTemplate.update("insert into t_blob (id,data) select * from csvread(?, null, 'charset=UTF-8 fieldSeparator=,')",
+                    file.getAbsolutePath());
+        } finally {
+            file.delete();
+        }
+        assertArrayEquals(bytes, jdbcTemplate.queryForObject("select data from t_blob where id = 1", byte[].class));
+        assertEquals(null, jdbcTemplate.queryForObject("select data from t_blob where id = 2", byte[].class));
+    }
+
+    @Test
+    public void writeValueQuotesEverythingButNull() throws Exception {
+        StringWriter writer = new StringWriter();
+        H2CsvReadIngestStrategy.writeValue(writer, null);
+        writer.write(',');
+        H2CsvReadIngestStrategy.writeValue(writer, "");
+        writer.write(',');
+        H2CsvReadIngestStrategy.writeValue(writer, "a\"b,c\nd");
+        writer.write(',');
+        H2CsvReadIngestStrategy.writeValue(writer, 12);
+        assertEquals(",\"\",\"a\"\"b,c\nd\",\"12\"", writer.toString());
+    }
+}
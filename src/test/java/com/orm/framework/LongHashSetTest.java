@@ -0,0 +1,83 @@
+package com.orm.framework;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void zeroIsAnOrdinaryKey() {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertArrayEquals(new long[]{0}, set.toArray());
+    }
+
+    @Test
+    public void duplicatesAreNotAdded() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.add(-42));
+        assertEquals(2, set.size());
+        assertFalse(set.contains(7));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        LongHashSet set = new LongHashSet(2);
+        for (long i = 1; i <= 100000; i++) {
+            assertTrue(set.add(i * 1024));
+        }
+        assertEquals(100000, set.size());
+        for (long i = 1; i <= 100000; i++) {
+            assertTrue(set.contains(i * 1024));
+            assertFalse(set.contains(i * 1024 + 1));
+        }
+    }
+
+    @Test
+    public void matchesHashSet() {
+        Random random = new Random(17);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(20000) - 10000;
+            assertEquals(expected.add(key), set.add(key));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key = -10001; key <= 10001; key++) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+    }
+
+    @Test
+    public void toArrayIsSortedAscending() {
+        LongHashSet set = new LongHashSet();
+        long[] keys = {5, Long.MIN_VALUE, 0, -3, Long.MAX_VALUE, 1L << 40, 5};
+        for (long key : keys) {
+            set.add(key);
+        }
+        assertArrayEquals(new long[]{Long.MIN_VALUE, -3, 0, 5, 1L << 40, Long.MAX_VALUE}, set.toArray());
+        assertEquals(Arrays.toString(set.toArray()), set.toString());
+    }
+
+    @Test
+    public void emptySet() {
+        LongHashSet set = new LongHashSet(0);
+        assertTrue(set.isEmpty());
+        assertArrayEquals(new long[0], set.toArray());
+    }
+}
@@ -0,0 +1,148 @@
+package com.orm.framework;
+
+import com.orm.transaction.entity.Member;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * merge一次遍历算出的插入、更新、删除集合，三个批量操作替换为记录参数
+ */
+public class MergeTest {
+
+    static class MemberDao extends BaseDaoSupport<Member, Long> {
+        final List<Member> inserted = new ArrayList<>();
+        final List<Member> updated = new ArrayList<>();
+        final List<Member> deleted = new ArrayList<>();
+        String[] updatedColumns;
+
+        @Override
+        protected String getPKColumn() {
+            return "id";
+        }
+
+        @Override
+        protected void setDataSource(DataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+        }
+
+        @Override
+        public int insertAll(List<Member> list) {
+            inserted.addAll(list);
+            return list.size();
+        }
+
+        @Override
+        public int[] updateAll(List<Member> list) {
+            updated.addAll(list);
+            int[] counts = new int[list.size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        }
+
+        @Override
+        public int[] updateAll(List<Member> list, String... columns) {
+            updatedColumns = columns;
+            return updateAll(list);
+        }
+
+        @Override
+        public int deleteAll(List<Member> list) {
+            deleted.addAll(list);
+            return list.size();
+        }
+    }
+
+    private MemberDao dao;
+
+    @Before
+    public void setUp() {
+        dao = new MemberDao();
+    }
+
+    private static Member member(Long id, String name, String addr, Integer age) {
+        Member m = new Member(name, addr, age);
+        m.setId(id);
+        return m;
+    }
+
+    private static List<Member> list(Member... members) {
+        return new ArrayList<>(Arrays.asList(members));
+    }
+
+    @Test
+    public void computesInsertUpdateAndDeleteSets() throws Exception {
+        Member po1 = member(1L, "Tom", "Beijing", 30);
+        Member po2 = member(2L, "Amy", "Shanghai", 20);
+        Member po3 = member(3L, "Bob", "Hangzhou", 40);
+        Member newWithoutId = member(null, "Joe", "Nanjing", 25);
+        Member newWithId = member(9L, "Ann", "Xi'an", 22);
+        MergeResult result = dao.merge(
+                list(member(1L, "Tommy", null, null), member(2L, "Amy", "Shanghai", 20), newWithoutId, newWithId),
+                list(po1, po2, po3), false);
+        //po1有变化，null不覆盖；po2没有变化不更新；po3没有匹配删除
+        assertEquals(Arrays.asList(po1), dao.updated);
+        assertEquals("Tommy", po1.getName());
+        assertEquals("Beijing", po1.getAddr());
+        assertEquals(Arrays.asList(po3), dao.deleted);
+        assertEquals(Arrays.asList(newWithoutId, newWithId), dao.inserted);
+        assertEquals(2, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getDeleted());
+        assertEquals(null, dao.updatedColumns);
+    }
+
+    @Test
+    public void duplicateKeysUseTheLastPojo() throws Exception {
+        Member po1 = member(1L, "Tom", "Beijing", 30);
+        Member last = member(5L, "Last", null, 2);
+        MergeResult result = dao.merge(
+                list(member(1L, "First", null, null), member(5L, "New", null, 1), member(1L, "Second", null, 31), last),
+                list(po1), false);
+        assertEquals(Arrays.asList(po1), dao.updated);
+        assertEquals("Second", po1.getName());
+        assertEquals(Integer.valueOf(31), po1.getAge());
+        //不在poList中的主键重复时也只插入一次
+        assertEquals(1, dao.inserted.size());
+        assertSame(last, dao.inserted.get(0));
+        assertTrue(dao.deleted.isEmpty());
+        assertEquals(1, result.getInserted());
+    }
+
+    @Test
+    public void nullKeysAreAllInserted() throws Exception {
+        Member a = member(null, "a", null, null);
+        Member b = member(null, "a", null, null);
+        dao.merge(list(a, b), Collections.<Member>emptyList(), false);
+        assertEquals(2, dao.inserted.size());
+        assertSame(a, dao.inserted.get(0));
+        assertSame(b, dao.inserted.get(1));
+    }
+
+    @Test
+    public void copyNullUpdatesAllUpdatableColumns() throws Exception {
+        Member po1 = member(1L, "Tom", "Beijing", 30);
+        dao.merge(list(member(1L, "Tom", null, 30)), list(po1), true);
+        assertEquals(Arrays.asList(po1), dao.updated);
+        assertEquals(null, po1.getAddr());
+        assertEquals(Arrays.asList("address", "age", "name"), Arrays.asList(dao.updatedColumns));
+    }
+
+    @Test
+    public void unchangedListsWriteNothing() throws Exception {
+        Member po1 = member(1L, "Tom", "Beijing", 30);
+        MergeResult result = dao.merge(list(member(1L, "Tom", "Beijing", 30)), list(po1), true);
+        assertTrue(dao.inserted.isEmpty() && dao.updated.isEmpty() && dao.deleted.isEmpty());
+        assertEquals(0, result.getInserted() + result.getUpdated() + result.getDeleted());
+    }
+}
@@ -0,0 +1,151 @@
+package com.orm.framework;
+
+import com.orm.transaction.entity.Member;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * LOAD DATA的行编码：读出RowInputStream的全部字节，按LOAD DATA的规则解码后与实体的属性值比较
+ */
+public class MySqlLoadDataIngestStrategyTest {
+
+    private BulkIngestContext<Member> context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new BulkIngestContext<Member>(null, new EntityOperation<Member>(Member.class, "id"), "t_member", "", 100);
+    }
+
+    private static Member member(Long id, String name, String addr, Integer age) {
+        Member m = new Member(name, addr, age);
+        m.setId(id);
+        return m;
+    }
+
+    private static byte[] readAll(InputStream in, int chunk) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (chunk == 1) {
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                out.write(b);
+            }
+        } else {
+            byte[] buf = new byte[chunk];
+            for (int n = in.read(buf, 0, chunk); n >= 0; n = in.read(buf, 0, chunk)) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private String encode(int chunk, Member... members) throws Exception {
+        return new String(readAll(new MySqlLoadDataIngestStrategy.RowInputStream<Member>(context,
+                Arrays.asList(members).iterator()), chunk), StandardCharsets.UTF_8);
+    }
+
+    //按LOAD DATA的默认规则拆分：未转义的\n分行、\t分列，\N为null
+    private static List<List<String>> decode(String text) {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean nul = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                char e = text.charAt(++i);
+                switch (e) {
+                    case 'N':
+                        nul = true;
+                        break;
+                    case 't':
+                        field.append('\t');
+                        break;
+                    case 'n':
+                        field.append('\n');
+                        break;
+                    case 'r':
+                        field.append('\r');
+                        break;
+                    case '0':
+                        field.append('\0');
+                        break;
+                    default:
+                        field.append(e);
+                }
+            } else if (c == '\t' || c == '\n') {
+                row.add(nul ? null : field.toString());
+                field.setLength(0);
+                nul = false;
+                if (c == '\n') {
+                    rows.add(row);
+                    row = new ArrayList<>();
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        assertEquals(0, field.length());
+        return rows;
+    }
+
+    //context.getColumns()的顺序：address, age, id, name
+    private static List<String> fields(String addr, Integer age, Long id, String name) {
+        return Arrays.asList(addr, age == null ? null : age.toString(), id == null ? null : id.toString(), name);
+    }
+
+    @Test
+    public void columnsAreSortedByName() {
+        assertEquals(Arrays.asList("address", "age", "id", "name"), Arrays.asList(context.getColumns()));
+    }
+
+    @Test
+    public void specialCharactersAreEscaped() throws Exception {
+        String text = encode(8192, member(1L, "x\\y\nz", "a\tb\r\0c", null));
+        assertEquals("a\\tb\\r\\0c\t\\N\t1\tx\\\\y\\nz\n", text);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Member[] members = {
+                member(1L, "Tom", "Beijing, \"CN\"", 30),
+                member(2L, null, "", null),
+                member(3L, "中文\\N", "line1\nline2\ttab", 0),
+                member(4L, "\\", "\r\n", -1),
+        };
+        List<List<String>> rows = decode(encode(8192, members));
+        assertEquals(members.length, rows.size());
+        for (int i = 0; i < members.length; i++) {
+            Member m = members[i];
+            assertEquals(fields(m.getAddr(), m.getAge(), m.getId(), m.getName()), rows.get(i));
+        }
+    }
+
+    @Test
+    public void rowLargerThanBufferAndSmallReads() throws Exception {
+        char[] chars = new char[5000];
+        Arrays.fill(chars, '\t');
+        String tabs = new String(chars);
+        Member[] members = {member(1L, tabs, "a", 1), member(2L, "b", tabs, 2)};
+        String bulk = encode(8192, members);
+        assertEquals(bulk, encode(1, members));
+        assertEquals(bulk, encode(7, members));
+        assertEquals(Arrays.asList(fields("a", 1, 1L, tabs), fields(tabs, 2, 2L, "b")), decode(bulk));
+    }
+
+    @Test
+    public void emptyIteratorIsEmptyStream() throws Exception {
+        InputStream in = new MySqlLoadDataIngestStrategy.RowInputStream<Member>(context, Collections.<Member>emptyIterator());
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(new byte[4], 0, 4));
+        assertEquals(0, in.read(new byte[4], 0, 0));
+    }
+}
@@ -0,0 +1,272 @@
+package com.orm.framework;
+
+import com.orm.transaction.entity.Member;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 并行分区导入的提交顺序、失败处理和中断，数据源用动态代理模拟：每个连接在提交时才把写入的主键计入已提交
+ */
+public class ParallelBulkLoaderTest {
+    private static final int PARTITION_SIZE = 10;
+
+    private final Set<Long> committed = Collections.synchronizedSet(new TreeSet<Long>());
+    //写入该主键的批处理失败
+    private volatile long failId = -1;
+    //写入失败前等待的毫秒数，让后面的分区先写完
+    private volatile long failDelayMillis = 0;
+    //批处理执行前等待
+    private volatile CountDownLatch writeGate = new CountDownLatch(0);
+    private EntityOperation<Member> op;
+
+    @Before
+    public void setUp() throws Exception {
+        op = new EntityOperation<Member>(Member.class, "id");
+    }
+
+    private ParallelBulkLoader<Member> loader(int parallelism, boolean ordered) {
+        BulkLoadOptions options = BulkLoadOptions.defaults().parallelism(parallelism)
+                .partitionSize(PARTITION_SIZE).orderedCommit(ordered);
+        return new ParallelBulkLoader<Member>(dataSource(), op,
+                "insert into t_member (address,age,id,name) values (?,?,?,?)", 4, options);
+    }
+
+    //返回id为0..n-1的记录，consumed为已读取的记录数
+    private static Iterator<Member> members(final int n, final AtomicInteger consumed) {
+        return new Iterator<Member>() {
+            @Override
+            public boolean hasNext() {
+                return consumed.get() < n;
+            }
+
+            @Override
+            public Member next() {
+                Member m = new Member("m", "a", 1);
+                m.setId((long) consumed.getAndIncrement());
+                return m;
+            }
+        };
+    }
+
+    private static Set<Long> range(long from, long to) {
+        Set<Long> ids = new TreeSet<>();
+        for (long id = from; id < to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static void assertPartitions(BulkLoadReport report, int count) {
+        assertEquals(count, report.getPartitions().size());
+        for (int i = 0; i < count; i++) {
+            BulkLoadReport.PartitionResult p = report.getPartitions().get(i);
+            assertEquals(i, p.getIndex());
+            assertEquals((long) i * PARTITION_SIZE, p.getFirstRow());
+            assertEquals(PARTITION_SIZE, p.getRows());
+        }
+    }
+
+    @Test
+    public void allPartitionsCommit() {
+        AtomicInteger consumed = new AtomicInteger();
+        BulkLoadReport report = loader(3, true).load(members(95, consumed));
+        assertTrue(report.isSuccess());
+        assertEquals(95, report.getRows());
+        assertEquals(10, report.getPartitions().size());
+        assertEquals(5, report.getPartitions().get(9).getRows());
+        assertEquals(range(0, 95), committed);
+    }
+
+    @Test
+    public void orderedCommitKeepsOnlyPrefixBeforeFailedPartition() {
+        failId = 35;
+        failDelayMillis = 200;
+        AtomicInteger consumed = new AtomicInteger();
+        BulkLoadReport report = loader(4, true).load(members(200, consumed));
+        //分区3失败：前面的分区已提交，后面已写入的分区全部回滚
+        assertEquals(range(0, 30), committed);
+        assertEquals(30, report.getRows());
+        assertFalse(report.isSuccess());
+        //失败后不再读取输入，报告中包含每个已读取的分区
+        assertTrue(consumed.get() < 200);
+        assertEquals(0, consumed.get() % PARTITION_SIZE);
+        int read = consumed.get() / PARTITION_SIZE;
+        assertTrue(read > 4);
+        assertPartitions(report, read);
+        for (BulkLoadReport.PartitionResult p : report.getPartitions()) {
+            assertEquals(p.getIndex() < 3, p.isCommitted());
+            assertEquals(p.getIndex() >= 3, p.getError() != null);
+        }
+        assertTrue(report.getPartitions().get(3).getError() instanceof SQLException);
+        assertTrue(report.getPartitions().get(4).getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void unorderedCommitKeepsEveryOtherPartition() {
+        failId = 35;
+        failDelayMillis = 50;
+        AtomicInteger consumed = new AtomicInteger();
+        BulkLoadReport report = loader(4, false).load(members(100, consumed));
+        Set<Long> expected = range(0, 100);
+        expected.removeAll(range(30, 40));
+        assertEquals(expected, committed);
+        assertPartitions(report, 10);
+        assertEquals(1, report.getFailures().size());
+        assertEquals(3, report.getFailures().get(0).getIndex());
+    }
+
+    @Test
+    public void interruptedReadIsReportedAsFailedPartition() throws Exception {
+        BulkLoadReport report = interruptThirdPartition(false);
+        assertEquals(range(0, 20), committed);
+        assertTrue(report.getPartitions().get(0).isCommitted() && report.getPartitions().get(1).isCommitted());
+    }
+
+    @Test
+    public void interruptedOrderedLoadRollsBackUncommittedPartitions() throws Exception {
+        BulkLoadReport report = interruptThirdPartition(true);
+        assertTrue(committed.isEmpty());
+        assertEquals(3, report.getFailures().size());
+    }
+
+    //并行数1时最多2个分区在途，读取第3个分区后等待许可时中断导入线程
+    private BulkLoadReport interruptThirdPartition(final boolean ordered) throws Exception {
+        writeGate = new CountDownLatch(1);
+        final AtomicInteger consumed = new AtomicInteger();
+        final AtomicReference<BulkLoadReport> report = new AtomicReference<>();
+        final AtomicBoolean interruptedAfter = new AtomicBoolean();
+        Thread loaderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                report.set(loader(1, ordered).load(members(100, consumed)));
+                interruptedAfter.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        loaderThread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (consumed.get() < 3 * PARTITION_SIZE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(3 * PARTITION_SIZE, consumed.get());
+        loaderThread.interrupt();
+        //中断后仍等待已提交写入的分区结束
+        Thread.sleep(100);
+        assertTrue(loaderThread.isAlive());
+        writeGate.countDown();
+        loaderThread.join(5000);
+        assertFalse(loaderThread.isAlive());
+        assertTrue(interruptedAfter.get());
+        assertEquals(3 * PARTITION_SIZE, consumed.get());
+        assertPartitions(report.get(), 3);
+        BulkLoadReport.PartitionResult dropped = report.get().getPartitions().get(2);
+        assertFalse(dropped.isCommitted());
+        assertTrue(dropped.getError() instanceof InterruptedException);
+        return report.get();
+    }
+
+    private DataSource dataSource() {
+        return proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return "getConnection".equals(method.getName()) ? connection() : defaultValue(method);
+            }
+        });
+    }
+
+    private Connection connection() {
+        //已执行但未提交的主键
+        final List<Long> written = new ArrayList<>();
+        return proxy(Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "prepareStatement":
+                        return statement(written);
+                    case "commit":
+                        committed.addAll(written);
+                        written.clear();
+                        return null;
+                    case "rollback":
+                        written.clear();
+                        return null;
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    private PreparedStatement statement(final List<Long> written) {
+        final List<Long> batch = new ArrayList<>();
+        final Long[] id = new Long[1];
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                switch (method.getName()) {
+                    case "setObject":
+                    case "setLong":
+                        //第3个参数是id
+                        if ((Integer) args[0] == 3) {
+                            id[0] = ((Number) args[1]).longValue();
+                        }
+                        return null;
+                    case "addBatch":
+                        batch.add(id[0]);
+                        return null;
+                    case "executeBatch":
+                        writeGate.await(5, TimeUnit.SECONDS);
+                        if (batch.contains(failId)) {
+                            Thread.sleep(failDelayMillis);
+                            throw new SQLException("duplicate key " + failId);
+                        }
+                        written.addAll(batch);
+                        int[] counts = new int[batch.size()];
+                        batch.clear();
+                        return counts;
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ParallelBulkLoaderTest.class.getClassLoader(), new Class[]{type}, handler);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
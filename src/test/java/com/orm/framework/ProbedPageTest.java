@@ -0,0 +1,79 @@
+package com.orm.framework;
+
+import org.junit.Test;
+
+import javax.core.common.Page;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * NO_COUNT和ESTIMATED由多取一条的查询结果得到的总数、总数来源和是否有下一页
+ */
+public class ProbedPageTest {
+
+    private static List<Integer> rows(int n) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            rows.add(i);
+        }
+        return rows;
+    }
+
+    private static void assertPage(Page<Integer> page, Page.TotalType type, long total, int rows, boolean hasNext) {
+        assertEquals(type, page.getTotalType());
+        assertEquals(total, page.getTotal());
+        assertEquals(rows, page.getRows().size());
+        assertEquals(hasNext, page.hasNextPage());
+    }
+
+    @Test
+    public void lastPageIsExact() {
+        assertPage(BaseDaoSupport.probedPage(20, 10, rows(7), -1), Page.TotalType.EXACT, 27, 7, false);
+        //正好取满一页、没有多出的一条时也是最后一页
+        assertPage(BaseDaoSupport.probedPage(20, 10, rows(10), -1), Page.TotalType.EXACT, 30, 10, false);
+        //有估算值时仍以准确值为准
+        assertPage(BaseDaoSupport.probedPage(20, 10, rows(7), 1000), Page.TotalType.EXACT, 27, 7, false);
+    }
+
+    @Test
+    public void emptyFirstPageIsExactZero() {
+        assertPage(BaseDaoSupport.probedPage(0, 10, rows(0), 50), Page.TotalType.EXACT, 0, 0, false);
+    }
+
+    @Test
+    public void nextPageGivesLowerBound() {
+        Page<Integer> page = BaseDaoSupport.probedPage(20, 10, rows(11), -1);
+        //多出的一条不返回，下限为 start + 本页条数 + 1
+        assertPage(page, Page.TotalType.UNKNOWN, 31, 10, true);
+        assertEquals(rows(10), page.getRows());
+    }
+
+    @Test
+    public void estimateIsRaisedToLowerBound() {
+        assertPage(BaseDaoSupport.probedPage(20, 10, rows(11), 500), Page.TotalType.ESTIMATED, 500, 10, true);
+        //估算值偏小时取已知的下限
+        assertPage(BaseDaoSupport.probedPage(20, 10, rows(11), 5), Page.TotalType.ESTIMATED, 31, 10, true);
+        assertPage(BaseDaoSupport.probedPage(20, 10, rows(11), 0), Page.TotalType.ESTIMATED, 31, 10, true);
+    }
+
+    @Test
+    public void emptyPageAfterStartIsNotExact() {
+        //超出末尾的页不知道总数，只有start这个位置
+        assertPage(BaseDaoSupport.probedPage(40, 10, rows(0), -1), Page.TotalType.UNKNOWN, 40, 0, false);
+        assertPage(BaseDaoSupport.probedPage(40, 10, rows(0), 12), Page.TotalType.ESTIMATED, 40, 0, false);
+    }
+
+    @Test
+    public void inputListIsNotModified() {
+        List<Integer> rows = rows(11);
+        Page<Integer> page = BaseDaoSupport.probedPage(0, 10, rows, -1);
+        assertEquals(11, rows.size());
+        assertFalse(page.getRows() == rows);
+        assertTrue(page.getRows().equals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.orm.framework;
+
+import com.orm.transaction.entity.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PropertyMapping的函数对象访问器与Method.invoke的对比
+ * 运行：直接执行main方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyAccessorBenchmark {
+
+    private EntityOperation<Member> op;
+    private PropertyMapping name;
+    private PropertyMapping age;
+    private Member member;
+
+    @Setup
+    public void setup() throws Exception {
+        op = new EntityOperation<>(Member.class, "id");
+        name = op.mappings.get("name");
+        age = op.mappings.get("age");
+        member = new Member("吴", "兴", 25);
+        member.setId(1L);
+    }
+
+    @Benchmark
+    public Object reflectGet() throws Exception {
+        return name.getter.invoke(member);
+    }
+
+    @Benchmark
+    public Object accessorGet() {
+        return name.get(member);
+    }
+
+    @Benchmark
+    public void reflectSet() throws Exception {
+        Method setter = age.setter;
+        setter.invoke(member, setter.getParameterTypes()[0].cast(30));
+    }
+
+    @Benchmark
+    public void accessorSet() {
+        age.set(member, 30);
+    }
+
+    //改造前的parse：逐个属性getter.invoke
+    @Benchmark
+    public Map<String, Object> reflectParse() throws Exception {
+        Map<String, Object> map = new TreeMap<>();
+        for (Map.Entry<String, PropertyMapping> entry : op.mappings.entrySet()) {
+            Object value = entry.getValue().getter.invoke(member);
+            if (value != null) {
+                map.put(entry.getKey(), value);
+            }
+        }
+        return map;
+    }
+
+    @Benchmark
+    public Map<String, Object> accessorParse() {
+        return op.parse(member);
+    }
+
+    //按固定列顺序写入线程内复用的ParsedRow，不创建Map
+    @Benchmark
+    public ParsedRow rowParse() {
+        return op.parseLocal(member);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PropertyAccessorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,78 @@
+package com.orm.framework;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QueryRuleSqlWriter与QueryRuleSqlBuilder的拼装耗时、内存分配对比
+ * 运行：直接执行main方法，gc profiler输出的gc.alloc.rate.norm即每次拼装分配的字节数
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryRuleSqlBenchmark {
+
+    private QueryRule queryRule;
+
+    @Setup
+    public void setup() {
+        List<Object> ids = new ArrayList<>();
+        for (long i = 0; i < 20; i++) {
+            ids.add(i);
+        }
+        queryRule = QueryRule.getInstance()
+                .andEqual("name", "吴兴")
+                .andLike("addr", "杭州*")
+                .andIn("id", ids)
+                .orIn("age", 18, 19, 20)
+                .andBetween("age", 10, 60)
+                .andGreaterEqual("age", 1)
+                .andIsNotNull("name")
+                .addAscOrder("age")
+                .addDescOrder("id");
+    }
+
+    @Benchmark
+    public Object[] builder() {
+        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
+        builder.getWhereSql();
+        builder.getOrderSql();
+        return builder.getValues();
+    }
+
+    @Benchmark
+    public Object[] writer() {
+        QueryRuleSqlWriter writer = new QueryRuleSqlWriter(queryRule);
+        writer.getWhereSql();
+        writer.getOrderSql();
+        return writer.getValues();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(QueryRuleSqlBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,155 @@
+package com.orm.framework;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * QueryRuleSqlWriter生成的where、order by语句和参数值，以及QueryRulePlanCache按IN列表长度区间复用的计划
+ */
+public class QueryRuleSqlWriterTest {
+
+    private static void assertWhere(QueryRule rule, String whereSql, Object... values) {
+        QueryRuleSqlWriter writer = new QueryRuleSqlWriter(rule);
+        assertEquals(whereSql, writer.getWhereSql());
+        assertArrayEquals(values, writer.getValues());
+    }
+
+    @Test
+    public void comparisons() {
+        assertWhere(QueryRule.getInstance().andEqual("name", "Tom"), "name = ?", "Tom");
+        assertWhere(QueryRule.getInstance().andNotEqual("name", "Tom"), "name <> ?", "Tom");
+        assertWhere(QueryRule.getInstance().andGreaterThan("age", 18), "age > ?", 18);
+        assertWhere(QueryRule.getInstance().andGreaterEqual("age", 18), "age >= ?", 18);
+        assertWhere(QueryRule.getInstance().andLessThan("age", 18), "age < ?", 18);
+        assertWhere(QueryRule.getInstance().andLessEqual("age", 18), "age <= ?", 18);
+    }
+
+    @Test
+    public void equalNullBecomesIsNull() {
+        assertWhere(QueryRule.getInstance().andEqual("addr", null), "addr is null");
+        assertWhere(QueryRule.getInstance().andNotEqual("addr", null), "addr is not null");
+    }
+
+    @Test
+    public void comparisonWithNullIsSkipped() {
+        assertWhere(QueryRule.getInstance().andGreaterThan("age", null).andLike("name", null), "");
+    }
+
+    @Test
+    public void like() {
+        assertWhere(QueryRule.getInstance().andLike("name", "T*m"), "name like ?", "%T%m%");
+    }
+
+    @Test
+    public void betweenBindsTwoValues() {
+        assertWhere(QueryRule.getInstance().andBetween("age", 18, 30), "age between ? and ?", 18, 30);
+        assertWhere(QueryRule.getInstance().andBetween("age", 18, null), "");
+    }
+
+    @Test
+    public void nullAndEmptyChecksHaveNoValues() {
+        assertWhere(QueryRule.getInstance().andIsNull("addr").andIsNotNull("name"), "addr is null and name is not null");
+        assertWhere(QueryRule.getInstance().andIsEmpty("addr").andIsNotEmpty("name"), "addr = '' and name <> ''");
+    }
+
+    @Test
+    public void inDropsNulls() {
+        assertWhere(QueryRule.getInstance().andIn("id", 1L, null, 3L), "id in (?,?)", 1L, 3L);
+        List<Object> ids = new ArrayList<Object>(Arrays.<Object>asList(null, 2L));
+        assertWhere(QueryRule.getInstance().andIn("id", ids), "id in (?)", 2L);
+        assertWhere(QueryRule.getInstance().andIn("id", new Object[]{null}), "");
+        assertWhere(QueryRule.getInstance().orNotIn("id", 1L, 2L), "id not in (?,?)", 1L, 2L);
+    }
+
+    @Test
+    public void andOrAndCaseArePreserved() {
+        QueryRule rule = QueryRule.getInstance().andEqual("userName", "Tom").orGreaterThan("Age", 18);
+        assertWhere(rule, "userName = ? or Age > ?", "Tom", 18);
+    }
+
+    @Test
+    public void orderBy() {
+        QueryRule rule = QueryRule.getInstance().addDescOrder("create_time").andEqual("name", "Tom").addAscOrder("id");
+        QueryRuleSqlWriter writer = new QueryRuleSqlWriter(rule);
+        assertEquals("name = ?", writer.getWhereSql());
+        assertEquals("create_time desc,id asc", writer.getOrderSql());
+    }
+
+    @Test
+    public void planWrapsWriterSql() {
+        QueryRulePlan plan = QueryRulePlan.compile(QueryRule.getInstance().andEqual("name", "Tom").addAscOrder("id"));
+        assertEquals(" where name = ? ", plan.whereSql);
+        assertEquals(" order by id asc", plan.orderSql);
+        QueryRulePlan empty = QueryRulePlan.compile(QueryRule.getInstance());
+        assertEquals("", empty.whereSql);
+        assertEquals(" ", empty.orderSql);
+    }
+
+    @Test
+    public void cachedPlanBindsNewValues() {
+        QueryRulePlanCache cache = new QueryRulePlanCache(16);
+        QueryRulePlan first = cache.plan(QueryRule.getInstance().andLike("name", "a").andBetween("age", 1, 2));
+        QueryRulePlan second = cache.plan(QueryRule.getInstance().andLike("name", "b*").andBetween("age", 3, 4));
+        assertSame(first, second);
+        assertEquals(" where name like ? and age between ? and ? ", second.whereSql);
+        assertArrayEquals(new Object[]{"%b%%", 3, 4},
+                second.bind(QueryRule.getInstance().andLike("name", "b*").andBetween("age", 3, 4)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void equalNullHasItsOwnPlan() {
+        QueryRulePlanCache cache = new QueryRulePlanCache(16);
+        QueryRulePlan value = cache.plan(QueryRule.getInstance().andEqual("addr", "x"));
+        QueryRulePlan nul = cache.plan(QueryRule.getInstance().andEqual("addr", null));
+        assertEquals(" where addr = ? ", value.whereSql);
+        assertEquals(" where addr is null ", nul.whereSql);
+        assertEquals(0, nul.parameterCount());
+    }
+
+    @Test
+    public void inListsShareSizeBuckets() {
+        QueryRulePlanCache cache = new QueryRulePlanCache(16);
+        QueryRulePlan three = cache.plan(QueryRule.getInstance().andIn("id", 1L, 2L, 3L));
+        QueryRulePlan four = cache.plan(QueryRule.getInstance().andIn("id", 5L, 6L, 7L, 8L));
+        QueryRulePlan five = cache.plan(QueryRule.getInstance().andIn("id", 1L, 2L, 3L, 4L, 5L));
+        assertSame(three, four);
+        assertEquals(" where id in (?,?,?,?) ", three.whereSql);
+        assertEquals(" where id in (?,?,?,?,?,?,?,?) ", five.whereSql);
+        //补齐的位置重复最后一个值
+        assertArrayEquals(new Object[]{1L, 2L, 3L, 3L}, three.bind(QueryRule.getInstance().andIn("id", 1L, 2L, 3L)));
+        assertArrayEquals(new Object[]{1L, 2L, 3L, 4L, 5L, 5L, 5L, 5L},
+                five.bind(QueryRule.getInstance().andIn("id", 1L, 2L, 3L, 4L, 5L)));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void inListFormSharesSizeBuckets() {
+        QueryRulePlanCache cache = new QueryRulePlanCache(16);
+        QueryRulePlan two = cache.plan(QueryRule.getInstance().andIn("id", new ArrayList<Object>(Arrays.<Object>asList(1L, 2L))));
+        List<Object> ids = new ArrayList<Object>(Arrays.<Object>asList(7L));
+        QueryRulePlan one = cache.plan(QueryRule.getInstance().andIn("id", ids));
+        assertEquals(" where id in (?,?) ", two.whereSql);
+        assertEquals(" where id in (?) ", one.whereSql);
+        assertArrayEquals(new Object[]{7L}, one.bind(QueryRule.getInstance().andIn("id", ids)));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void inListWithNullBypassesCache() {
+        QueryRulePlanCache cache = new QueryRulePlanCache(16);
+        QueryRulePlan plan = cache.plan(QueryRule.getInstance().andIn("id", 1L, null, 3L));
+        assertEquals(" where id in (?,?) ", plan.whereSql);
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getBypasses());
+    }
+}
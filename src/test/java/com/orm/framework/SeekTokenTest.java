@@ -0,0 +1,132 @@
+package com.orm.framework;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 续传令牌的编码、校验，以及selectSeek生成的定位条件
+ */
+public class SeekTokenTest {
+    private static final String SIGNATURE = "create_time desc,id desc";
+
+    @Test
+    public void roundTripKeepsTypes() {
+        Object[] values = {"a.b/c", 1L, 2, 3.5d, 4.5f, new BigDecimal("1.50"), new BigInteger("12345678901234567890"),
+                true, Timestamp.valueOf("2018-01-02 03:04:05.123456789"), java.sql.Date.valueOf("2018-01-02"),
+                new Date(1500000000123L), null};
+        String token = SeekToken.encode(SIGNATURE, values);
+        Object[] decoded = SeekToken.decode(SIGNATURE, token, values.length);
+        assertArrayEquals(values, decoded);
+        for (int i = 0; i < values.length - 1; i++) {
+            assertEquals(values[i].getClass(), decoded[i].getClass());
+        }
+    }
+
+    @Test
+    public void shortAndByteDecodeAsInteger() {
+        Object[] decoded = SeekToken.decode(SIGNATURE, SeekToken.encode(SIGNATURE, new Object[]{(short) 7, (byte) 8}), 2);
+        assertArrayEquals(new Object[]{7, 8}, decoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherOrderIsRejected() {
+        String token = SeekToken.encode(SIGNATURE, new Object[]{1L, 2L});
+        SeekToken.decode("create_time asc,id asc", token, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongKeyCountIsRejected() {
+        String token = SeekToken.encode(SIGNATURE, new Object[]{1L, 2L});
+        SeekToken.decode(SIGNATURE, token, 3);
+    }
+
+    @Test
+    public void modifiedTokensAreRejected() {
+        String token = SeekToken.encode(SIGNATURE, new Object[]{1500000000000L, 42L});
+        String other = SeekToken.encode(SIGNATURE, new Object[]{1500000000000L, 43L});
+        String[] tampered = {
+                token.substring(0, token.lastIndexOf('.')) + other.substring(other.lastIndexOf('.')),
+                token.substring(0, token.length() - 1),
+                token + "A",
+                token.substring(0, token.indexOf('.')) + ".N" + token.substring(token.indexOf('.', token.indexOf('.') + 1)),
+                "0" + token,
+                token.replace('.', ','),
+                "",
+        };
+        for (String t : tampered) {
+            try {
+                SeekToken.decode(SIGNATURE, t, 2);
+                fail("accepted " + t);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().length() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void supportedTypes() {
+        assertTrue(SeekToken.supports(long.class));
+        assertTrue(SeekToken.supports(Float.class));
+        assertTrue(SeekToken.supports(Timestamp.class));
+        assertTrue(!SeekToken.supports(Object.class));
+        assertTrue(!SeekToken.supports(byte[].class));
+    }
+
+    private static String condition(List<Object> args, boolean[] nullables, Object[] last, Boolean... descs) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < descs.length; i++) {
+            keys.add(i == descs.length - 1 ? "id" : "k" + i);
+        }
+        return BaseDaoSupport.seekCondition(keys, Arrays.asList(descs), nullables, last, args);
+    }
+
+    @Test
+    public void uniformNotNullKeysUseRowComparison() {
+        List<Object> args = new ArrayList<>();
+        assertEquals("id > ?", condition(args, new boolean[]{false}, new Object[]{5L}, false));
+        assertEquals(Arrays.<Object>asList(5L), args);
+    }
+
+    @Test
+    public void mixedDirectionsExpandToOr() {
+        List<Object> args = new ArrayList<>();
+        String sql = condition(args, new boolean[]{false, false}, new Object[]{3, 5L}, true, false);
+        assertEquals("((k0 < ?) or (k0 = ? and id > ?))", sql);
+        assertEquals(Arrays.<Object>asList(3, 3, 5L), args);
+    }
+
+    @Test
+    public void nullableAscendingKey() {
+        List<Object> args = new ArrayList<>();
+        assertEquals("((k0 > ?) or (k0 = ? and id > ?))",
+                condition(args, new boolean[]{true, false}, new Object[]{30, 5L}, false, false));
+        args.clear();
+        assertEquals("((k0 is not null) or (k0 is null and id > ?))",
+                condition(args, new boolean[]{true, false}, new Object[]{null, 5L}, false, false));
+        assertEquals(Arrays.<Object>asList(5L), args);
+    }
+
+    @Test
+    public void nullableDescendingKey() {
+        List<Object> args = new ArrayList<>();
+        assertEquals("(((k0 < ? or k0 is null)) or (k0 = ? and id < ?))",
+                condition(args, new boolean[]{true, false}, new Object[]{30, 5L}, true, true));
+        assertEquals(Arrays.<Object>asList(30, 30, 5L), args);
+        args.clear();
+        assertEquals("((k0 is null and id < ?))",
+                condition(args, new boolean[]{true, false}, new Object[]{null, 5L}, true, true));
+        assertEquals(Arrays.<Object>asList(5L), args);
+    }
+}
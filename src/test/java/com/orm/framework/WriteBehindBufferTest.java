@@ -0,0 +1,193 @@
+package com.orm.framework;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 延迟写入缓冲区的合并、背压和关闭，Flusher记录每次刷出的记录
+ */
+public class WriteBehindBufferTest {
+
+    //一次刷出：[insert/update] 后每行的值
+    private final List<String> flushed = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile CountDownLatch entered = new CountDownLatch(0);
+
+    private final WriteBehindBuffer.Flusher flusher = new WriteBehindBuffer.Flusher() {
+        @Override
+        public int flush(List<ParsedRow> inserts, List<ParsedRow> updates) {
+            entered.countDown();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            threads.add(Thread.currentThread().getName());
+            flushed.add("insert" + inserts + " update" + updates);
+            return 0;
+        }
+    };
+
+    private static WriteBehindOptions options(int capacity, long offerTimeoutMillis) {
+        return WriteBehindOptions.defaults().capacity(capacity).flushSize(1000)
+                .flushIntervalMillis(60000).offerTimeoutMillis(offerTimeoutMillis);
+    }
+
+    //id、name、age三列
+    private static ParsedRow row(Object id, Object name, Object age) {
+        ParsedRow row = new ParsedRow(3);
+        row.set(0, id);
+        row.set(1, name);
+        row.set(2, age);
+        return row;
+    }
+
+    @Test
+    public void samePkIsCoalesced() throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(10, 0), flusher);
+        buffer.enqueue(1L, true, row(1L, "a", 10));
+        buffer.enqueue(2L, false, row(2L, "b", 20));
+        //后写入的非null列覆盖，null列保留先写入的值；先insert后update仍为insert
+        buffer.enqueue(1L, false, row(1L, null, 11));
+        buffer.enqueue(2L, false, row(2L, "c", null));
+        assertEquals(2, buffer.getQueueDepth());
+        assertEquals(4, buffer.getEnqueued());
+        assertEquals(2, buffer.getCoalesced());
+        buffer.flushAndWait();
+        assertEquals(Arrays.asList("insert[[1, a, 11]] update[[2, c, 20]]"), flushed);
+        assertEquals(0, buffer.getQueueDepth());
+        assertEquals(2, buffer.getFlushedRows());
+        buffer.close();
+    }
+
+    @Test
+    public void updateThenInsertIsInsert() throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(10, 0), flusher);
+        buffer.enqueue(1L, false, row(1L, "a", null));
+        buffer.enqueue(1L, true, row(1L, null, 10));
+        buffer.flushAndWait();
+        assertEquals(Arrays.asList("insert[[1, a, 10]] update[]"), flushed);
+        buffer.close();
+    }
+
+    @Test
+    public void nullPkIsNeverCoalesced() throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(10, 0), flusher);
+        buffer.enqueue(null, true, row(null, "a", 1));
+        buffer.enqueue(null, true, row(null, "b", 2));
+        assertEquals(2, buffer.getQueueDepth());
+        buffer.flushAndWait();
+        assertEquals(Arrays.asList("insert[[null, a, 1], [null, b, 2]] update[]"), flushed);
+        buffer.close();
+    }
+
+    @Test
+    public void enqueueCopiesTheRow() throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(10, 0), flusher);
+        ParsedRow row = row(1L, "a", 1);
+        buffer.enqueue(1L, true, row);
+        row.set(1, "changed");
+        buffer.close();
+        assertEquals(Arrays.asList("insert[[1, a, 1]] update[]"), flushed);
+    }
+
+    @Test
+    public void fullBufferTimesOutWhileFlushIsBlocked() throws Exception {
+        gate = new CountDownLatch(1);
+        entered = new CountDownLatch(1);
+        WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(2, 100), flusher);
+        buffer.enqueue(1L, true, row(1L, "a", 1));
+        buffer.enqueue(2L, true, row(2L, "b", 2));
+        //缓冲区满，请求刷出；刷出取走记录后有了空位
+        buffer.enqueue(3L, true, row(3L, "c", 3));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        buffer.enqueue(4L, true, row(4L, "d", 4));
+        assertEquals(2, buffer.getQueueDepth());
+        //已有记录的主键合并不占位置
+        buffer.enqueue(3L, false, row(3L, "cc", null));
+        long begin = System.nanoTime();
+        try {
+            buffer.enqueue(5L, true, row(5L, "e", 5));
+            fail("enqueue into a full buffer must time out");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("缓冲区已满"));
+        }
+        assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS.toNanos(90));
+        gate.countDown();
+        buffer.close();
+        assertEquals(Arrays.asList("insert[[1, a, 1], [2, b, 2]] update[]", "insert[[3, cc, 3], [4, d, 4]] update[]"), flushed);
+    }
+
+    @Test
+    public void fullBufferBlocksUntilFlushed() throws Exception {
+        gate = new CountDownLatch(1);
+        entered = new CountDownLatch(1);
+        final WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(1, 5000), flusher);
+        buffer.enqueue(1L, true, row(1L, "a", 1));
+        buffer.enqueue(2L, true, row(2L, "b", 2));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        //第一次刷出被阻塞，缓冲区中有2，写入3的线程等待
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buffer.enqueue(3L, true, row(3L, "c", 3));
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+                done.countDown();
+            }
+        });
+        writer.start();
+        assertTrue(!done.await(200, TimeUnit.MILLISECONDS));
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(null, error.get());
+        buffer.close();
+        assertEquals(Arrays.asList("insert[[1, a, 1]] update[]", "insert[[2, b, 2]] update[]",
+                "insert[[3, c, 3]] update[]"), flushed);
+    }
+
+    @Test
+    public void closeFlushesRemainingRowsOnBufferThread() throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(10, 0), flusher);
+        buffer.enqueue(1L, true, row(1L, "a", 1));
+        buffer.enqueue(2L, false, row(2L, "b", null));
+        buffer.close();
+        assertEquals(Arrays.asList("insert[[1, a, 1]] update[[2, b, null]]"), flushed);
+        assertEquals(Arrays.asList("write-behind-t"), threads);
+        try {
+            buffer.enqueue(3L, true, row(3L, "c", 3));
+            fail("enqueue after close must fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("已关闭"));
+        }
+        //关闭后再刷出、再关闭不做任何事
+        buffer.flushAndWait();
+        buffer.close();
+        assertEquals(1, flushed.size());
+    }
+
+    @Test
+    public void flushAndWaitWithoutRowsDoesNotFlush() throws Exception {
+        WriteBehindBuffer buffer = new WriteBehindBuffer("t", options(10, 0), flusher);
+        buffer.flushAndWait();
+        assertEquals(0, buffer.getFlushCount());
+        buffer.close();
+        assertTrue(flushed.isEmpty());
+    }
+}